@@ -126,12 +126,14 @@ dependencies {
     // Pick ONE OkHttp line:
     implementation(libs.okhttp)
     // implementation(libs.okhttp.v4100)
+    implementation(libs.okhttp.brotli) // BrotliInterceptor (br + gzip response decoding)
 
     // Helpful for modern WebView APIs
     implementation("androidx.webkit:webkit:1.11.0")
     implementation(libs.firebase.components)
 
     testImplementation(libs.junit)
+    testImplementation(libs.json) // android.jar's org.json is stubs only on the JVM
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso.core)
 }
@@ -5,7 +5,11 @@ import android.content.ClipboardManager;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Base64;
 import android.util.Log;
 import android.view.Menu;
@@ -28,10 +32,12 @@ import androidx.recyclerview.widget.RecyclerView;
 import java.text.Normalizer;
 
 import com.kinvo.easyinventory.adapters.ProductAdapter;
-import com.kinvo.easyinventory.data.CloverRepository;
 import com.kinvo.easyinventory.data.DataSource;
 import com.kinvo.easyinventory.data.InventoryRepository;
 import com.kinvo.easyinventory.data.ProviderFactory;
+import com.kinvo.easyinventory.data.QueryCache;
+import com.kinvo.easyinventory.data.StockOutbox;
+import com.kinvo.easyinventory.data.SyncEngine;
 import com.kinvo.easyinventory.model.Product;
 import com.kinvo.easyinventory.print.LabelData;
 import com.kinvo.easyinventory.print.LabelPrinter;
@@ -64,6 +70,15 @@ public class ProductSearchActivity extends AppCompatActivity {
     private Product selectedProduct = null;
 
     private boolean isLoading = false;
+    private int searchGeneration = 0; // bumps per search; stale callbacks drop their result
+    private String lastQuery = null;
+
+    private static final long TYPING_DEBOUNCE_MS = 300L;
+    private static final int MIN_TYPED_CHARS = 2;
+    private final Handler debounce = new Handler(Looper.getMainLooper());
+    private final Runnable typedSearch = () -> {
+        if (etSearch != null) runSearch(etSearch.getText().toString().trim());
+    };
 
     // legacy EPOS-only fields (kept for adapter ctor compatibility)
     private String eposAuthHeader = "";
@@ -71,6 +86,10 @@ public class ProductSearchActivity extends AppCompatActivity {
 
     private String providerName = "EPOSNOW"; // UI only
 
+    private final StockOutbox.Listener outboxListener = () -> {
+        if (productAdapter != null) productAdapter.notifyItemRangeChanged(0, productAdapter.getItemCount());
+    };
+
 
 
 // ...inside ProductSearchActivity (static helpers) ----------------------------
@@ -161,17 +180,19 @@ public class ProductSearchActivity extends AppCompatActivity {
             Toast.makeText(this, "Selected: " + safe(item.getDescription()), Toast.LENGTH_SHORT).show();
         });
 
-        // Provider-aware stock update
-        productAdapter.setOnUpdateStockRequested((product, newStock, onSuccess, onFailure) -> {
-            InventoryRepository repo = ProviderFactory.get(this);
-
-            // Determine active provider
-            DataSource ds = DataSource.EPOSNOW;
-            try {
-                DataSource saved = SecurePrefs.get(this).getProvider();
-                if (saved != null) ds = saved;
-            } catch (Throwable ignored) {}
+        // Provider-aware stock update: journaled to the outbox, sent when the network allows.
+        StockOutbox outbox = StockOutbox.get(this);
+        productAdapter.setSyncStatusSource(p -> {
+            switch (outbox.status(activeSource(), p)) {
+                case PENDING: return "Pending sync…";
+                case FAILED:  return "Sync failed – count again to retry";
+                default:      return null;
+            }
+        });
+        outbox.addListener(outboxListener);
 
+        productAdapter.setOnUpdateStockRequested((product, newStock, previousStock, onSuccess, onFailure) -> {
+            DataSource ds = activeSource();
             switch (ds) {
                 case EPOSNOW: {
                     // EPOS expects StockItemId and locationId from EPOS prefs
@@ -185,25 +206,13 @@ public class ProductSearchActivity extends AppCompatActivity {
                         Toast.makeText(this, "Missing EPOS StockItemId or Location Id. Please re-login.", Toast.LENGTH_LONG).show();
                         return;
                     }
-
-                    repo.updateStock(this, stockItemId, locationForUpdate, newStock, new InventoryRepository.Callback<Product>() {
-                        @Override public void onSuccess(Product result) {
-                            onSuccess.run(); // optimistic UI ok
-                            Toast.makeText(ProductSearchActivity.this, "Stock updated", Toast.LENGTH_SHORT).show();
-                        }
-                        @Override public void onError(Exception e) {
-                            Log.e(TAG, "EPOS update failed", e);
-                            onFailure.run();
-                            Toast.makeText(ProductSearchActivity.this,
-                                    "Update failed: " + (e.getMessage() == null ? e.toString() : e.getMessage()),
-                                    Toast.LENGTH_LONG).show();
-                        }
-                    });
+                    outbox.enqueue(ds, product, stockItemId, locationForUpdate, newStock, previousStock);
                     break;
                 }
 
                 case SHOPIFY: {
-                    // Need inventory_item_id only; let repo resolve LONG location id & do GraphQL delta
+                    // Need inventory_item_id only; the repo resolves the LONG location id and sets the
+                    // quantity in one call, compare-and-set against what the counter saw
                     Long invItem = product.getInventoryItemId();
                     long inventoryItemId = (invItem == null ? 0L : invItem);
 
@@ -214,56 +223,27 @@ public class ProductSearchActivity extends AppCompatActivity {
                                 Toast.LENGTH_LONG).show();
                         return;
                     }
-
-                    // Pass locationId=0 -> repository will ensure LONG location id and proceed
-                    repo.updateStock(this, inventoryItemId, /*locationId*/ 0, newStock,
-                            new InventoryRepository.Callback<Product>() {
-                                @Override public void onSuccess(Product result) {
-                                    onSuccess.run();
-                                    Toast.makeText(ProductSearchActivity.this, "Stock updated", Toast.LENGTH_SHORT).show();
-                                }
-                                @Override public void onError(Exception e) {
-                                    Log.e(TAG, "Shopify update failed", e);
-                                    onFailure.run();
-                                    Toast.makeText(ProductSearchActivity.this,
-                                            "Update failed: " + (e.getMessage() == null ? e.toString() : e.getMessage()),
-                                            Toast.LENGTH_LONG).show();
-                                }
-                            });
+                    outbox.enqueue(ds, product, inventoryItemId, /*locationId*/ 0, newStock, previousStock);
                     break;
                 }
 
                 case CLOVER: {
-                    if (!(repo instanceof CloverRepository)) {
+                    if (TextUtils.isEmpty(product.getExternalId())) {
                         onFailure.run();
-                        Toast.makeText(this, "Clover repo not available.", Toast.LENGTH_LONG).show();
+                        Toast.makeText(this, "Missing Clover item id. Re-search or refresh your catalog.", Toast.LENGTH_LONG).show();
                         return;
                     }
-                    Double prior = product.getCurrentStock();
-                    product.setCurrentStock(newStock); // Clover expects absolute qty in body
-
-                    ((CloverRepository) repo).updateStock(this, product, new InventoryRepository.Callback<Boolean>() {
-                        @Override public void onSuccess(Boolean ok) {
-                            onSuccess.run();
-                            Toast.makeText(ProductSearchActivity.this, ok ? "Stock updated" : "No change", Toast.LENGTH_SHORT).show();
-                        }
-                        @Override public void onError(Exception e) {
-                            product.setCurrentStock(prior); // restore if you want extra safety
-                            Log.e(TAG, "Clover update failed", e);
-                            onFailure.run();
-                            Toast.makeText(ProductSearchActivity.this,
-                                    "Update failed: " + (e.getMessage() == null ? e.toString() : e.getMessage()),
-                                    Toast.LENGTH_LONG).show();
-                        }
-                    });
+                    outbox.enqueue(ds, product, 0L, 0, newStock, previousStock); // Clover is addressed by externalId
                     break;
                 }
 
                 default: {
                     onFailure.run();
                     Toast.makeText(this, "Provider not supported for update: " + ds, Toast.LENGTH_SHORT).show();
+                    return;
                 }
             }
+            onSuccess.run(); // recorded; the row shows the sync state until the provider confirms
         });
 
         View btn = findViewById(R.id.btnSearch);
@@ -273,6 +253,11 @@ public class ProductSearchActivity extends AppCompatActivity {
                 onClickSearch(tv);
                 return true;
             });
+            etSearch.addTextChangedListener(new TextWatcher() {
+                @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+                @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+                @Override public void afterTextChanged(Editable s) { onSearchTextChanged(s.toString().trim()); }
+            });
         }
 
         if (PREFETCH_ON_LAUNCH) onClickSearch(null);
@@ -286,36 +271,82 @@ public class ProductSearchActivity extends AppCompatActivity {
         } catch (Throwable ignored) {}
 
         String query = etSearch != null ? etSearch.getText().toString().trim() : "";
+        debounce.removeCallbacks(typedSearch);
+        runSearch(query);
+    }
 
-        selectedProduct = null;
-        productList.clear();
-        productAdapter.notifyDataSetChanged();
+    /** Search-as-you-type: wait for a pause in typing, then search (superseding anything in flight). */
+    private void onSearchTextChanged(String query) {
+        debounce.removeCallbacks(typedSearch);
+        if (query.isEmpty()) { // cleared: drop whatever was running and empty the list
+            ++searchGeneration;
+            ProviderFactory.get(this).cancelPendingSearches();
+            lastQuery = null;
+            isLoading = false;
+            if (progressBar != null) progressBar.setVisibility(View.GONE);
+            productAdapter.setItems(new ArrayList<>());
+            return;
+        }
+        if (query.length() < MIN_TYPED_CHARS || query.equals(lastQuery)) return;
+        debounce.postDelayed(typedSearch, TYPING_DEBOUNCE_MS);
+    }
 
+    private void runSearch(String query) {
+        lastQuery = query;
+        selectedProduct = null;
         InventoryRepository repo = ProviderFactory.get(this);
+        repo.cancelPendingSearches(); // results of an older query must not be paid for or land late
 
         // EPOS uses location; others ignore
         int locationId = 0;
-        try { locationId = SecurePrefs.get(this).getLocationId(); } catch (Throwable ignored) {}
+        DataSource ds = null;
+        try {
+            SecurePrefs prefs = SecurePrefs.get(this);
+            locationId = prefs.getLocationId();
+            ds = prefs.getProvider();
+        } catch (Throwable ignored) {}
 
-        isLoading = true;
-        if (progressBar != null) progressBar.setVisibility(View.VISIBLE);
+        // Stale-while-revalidate: a recent identical search renders at once, then refreshes quietly.
+        final int gen = ++searchGeneration;
+        final String cacheKey = QueryCache.key(ds, locationId, query);
+        final QueryCache.Hit cached = QueryCache.get().lookup(cacheKey);
+        if (cached != null) {
+            productAdapter.setItems(cached.products);
+            // A superseded search may have left the spinner up; cached rows are not loading.
+            isLoading = false;
+            if (progressBar != null) progressBar.setVisibility(View.GONE);
+            if (cached.fresh) return;
+        } else {
+            productAdapter.setItems(new ArrayList<>());
+            isLoading = true;
+            if (progressBar != null) progressBar.setVisibility(View.VISIBLE);
+        }
 
         repo.searchProducts(this, query, locationId, /*limit*/250, new InventoryRepository.Callback<List<Product>>() {
             @Override public void onSuccess(List<Product> result) {
+                List<Product> rows = result != null ? result : new ArrayList<>();
+                QueryCache.get().put(cacheKey, rows);
+                if (gen != searchGeneration) return; // a newer search owns the list now
                 isLoading = false;
                 if (progressBar != null) progressBar.setVisibility(View.GONE);
 
-                productList.clear();
-                if (result != null) productList.addAll(result);
-                productAdapter.notifyDataSetChanged();
-
+                if (cached != null) {
+                    productAdapter.updateItems(rows); // in place: only changed rows rebind
+                    return;
+                }
+                productAdapter.setItems(rows);
                 if (productList.isEmpty()) {
                     Toast.makeText(ProductSearchActivity.this, "No products found.", Toast.LENGTH_SHORT).show();
                 }
             }
             @Override public void onError(Exception e) {
+                if (gen != searchGeneration) return;
                 isLoading = false;
                 if (progressBar != null) progressBar.setVisibility(View.GONE);
+                if (cached != null) { // keep showing the cached rows
+                    Log.w(TAG, "Revalidation failed: " + e);
+                    return;
+                }
                 Log.e(TAG, "Search failed", e);
                 Toast.makeText(ProductSearchActivity.this,
                         "Request failed: " + (e.getMessage() == null ? e.toString() : e.getMessage()),
@@ -492,10 +523,28 @@ public class ProductSearchActivity extends AppCompatActivity {
         finish();
     }
 
+    @Override
+    protected void onDestroy() {
+        debounce.removeCallbacks(typedSearch);
+        ProviderFactory.get(this).cancelPendingSearches();
+        StockOutbox.get(this).removeListener(outboxListener);
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         invalidateOptionsMenu(); // re-check tier if it changed while away
+        SyncEngine.syncActive(this, null); // pull only what changed since the last sync
+        StockOutbox.get(this).resume();     // replay counts recorded while offline
+    }
+
+    private DataSource activeSource() {
+        try {
+            DataSource saved = SecurePrefs.get(this).getProvider();
+            if (saved != null) return saved;
+        } catch (Throwable ignored) {}
+        return DataSource.EPOSNOW;
     }
 
     private static String safe(String s) { return s == null ? "" : s; }
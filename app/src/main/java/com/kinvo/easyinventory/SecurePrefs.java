@@ -8,7 +8,11 @@ import androidx.annotation.Nullable;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
+import com.kinvo.easyinventory.data.CatalogStore;
 import com.kinvo.easyinventory.data.DataSource;
+import com.kinvo.easyinventory.data.NetworkStack;
+import com.kinvo.easyinventory.data.QueryCache;
+import com.kinvo.easyinventory.data.StockOutbox;
 import com.kinvo.easyinventory.data.Provider; // keep for back-compat (if used elsewhere)
 
 import java.io.IOException;
@@ -76,6 +80,7 @@ public final class SecurePrefs {
     private static final String KEY_PLAN_NAME    = "pref_plan_name";
 
     private final SharedPreferences sp;
+    private final Context app;
 
     private SecurePrefs(Context app) {
         SharedPreferences tmp;
@@ -96,6 +101,7 @@ public final class SecurePrefs {
             tmp = app.getSharedPreferences(FILE, Context.MODE_PRIVATE);
         }
         this.sp = tmp;
+        this.app = app;
     }
 
     /** True only if the user explicitly chose a provider (enum or legacy string key is present). */
@@ -233,8 +239,18 @@ public final class SecurePrefs {
     // ------------------------------------------------------------------------
     // Utilities
     // ------------------------------------------------------------------------
-    /** Clear everything (used by Logout). */
-    public void clearAll() { sp.edit().clear().apply(); }
+    /**
+     * Clear everything (used by Logout). Also drops in-flight requests made with the old creds
+     * and the local catalog mirror.
+     */
+    public void clearAll() {
+        sp.edit().clear().apply();
+        NetworkStack.shutdown();
+        NetworkStack.clearCache(app);
+        QueryCache.get().clear();
+        CatalogStore.wipe(app);
+        StockOutbox.signedOut(app);
+    }
 
     /** Back-compat alias for older code calling prefs.logout(). */
     public void logout() { clearAll(); }
@@ -13,6 +13,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.kinvo.easyinventory.R;
@@ -23,6 +25,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
 
@@ -30,14 +33,20 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         void onItemClick(@NonNull Product item);
     }
 
-    /** Callback to let the Activity perform the real API update. */
+    /** Callback to let the Activity perform the real API update; previousStock = value shown before the edit. */
     public interface OnUpdateStockRequested {
         void onUpdateStock(@NonNull Product product,
                            double newStock,
+                           double previousStock,
                            @NonNull Runnable onSuccess,
                            @NonNull Runnable onFailure);
     }
 
+    /** Sync state of a row's last stock change, as shown under the row (null = nothing to show). */
+    public interface SyncStatusSource {
+        @Nullable String statusText(@NonNull Product product);
+    }
+
     private final Context context;
     private final List<Product> productList; // mutable backing list
     // kept for legacy ctor signature; not used inside this adapter
@@ -46,6 +55,7 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
     private OnItemClickListener itemClickListener;
     private OnUpdateStockRequested updateStockListener;
+    private SyncStatusSource syncStatusSource;
     private int selectedPos = RecyclerView.NO_POSITION;
 
     public ProductAdapter(Context context, List<Product> productList, String authToken, int locationId) {
@@ -59,6 +69,8 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
     public void setOnUpdateStockRequested(OnUpdateStockRequested l) { this.updateStockListener = l; }
 
+    public void setSyncStatusSource(SyncStatusSource s) { this.syncStatusSource = s; }
+
     @NonNull
     public List<Product> getCurrentItems() { return new ArrayList<>(productList); }
 
@@ -69,6 +81,44 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         notifyDataSetChanged();
     }
 
+    /**
+     * Swap in a refreshed result without a full rebind: rows are matched by provider id,
+     * so only moved/changed/added/removed rows animate and the selection follows its item.
+     */
+    public void updateItems(@NonNull List<Product> fresh) {
+        List<Product> old = new ArrayList<>(productList);
+        Product selected = getSelectedItem();
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override public int getOldListSize() { return old.size(); }
+            @Override public int getNewListSize() { return fresh.size(); }
+            @Override public boolean areItemsTheSame(int o, int n) { return sameItem(old.get(o), fresh.get(n)); }
+            @Override public boolean areContentsTheSame(int o, int n) { return sameContents(old.get(o), fresh.get(n)); }
+        });
+        productList.clear();
+        productList.addAll(fresh);
+        selectedPos = RecyclerView.NO_POSITION;
+        if (selected != null) {
+            for (int i = 0; i < fresh.size(); i++) {
+                if (sameItem(selected, fresh.get(i))) { selectedPos = i; break; }
+            }
+        }
+        diff.dispatchUpdatesTo(this);
+    }
+
+    private static boolean sameItem(Product a, Product b) {
+        if (a.getExternalId() != null && !a.getExternalId().isEmpty()) return a.getExternalId().equals(b.getExternalId());
+        if (a.getVariantId() != null) return a.getVariantId().equals(b.getVariantId());
+        if (a.getInventoryItemId() != null) return a.getInventoryItemId().equals(b.getInventoryItemId());
+        return nullSafe(a.getDescription()).equals(nullSafe(b.getDescription()));
+    }
+
+    private static boolean sameContents(Product a, Product b) {
+        return nullSafe(a.getDescription()).equals(nullSafe(b.getDescription()))
+                && Objects.equals(a.getCurrentStock(), b.getCurrentStock())
+                && a.getPriceBig().compareTo(b.getPriceBig()) == 0
+                && a.isStockUpdatedMessageVisible() == b.isStockUpdatedMessageVisible();
+    }
+
     public Product getSelectedItem() {
         if (selectedPos >= 0 && selectedPos < productList.size()) return productList.get(selectedPos);
         return null;
@@ -93,8 +143,10 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
         holder.tvCurrentStock.setText("Current Stock: " + formatStock(product.getCurrentStock() == null ? 0d : product.getCurrentStock()));
         holder.tvPrice.setText("Price: " + formatCurrency(product.getPriceBig()));
 
+        String sync = syncStatusSource != null ? syncStatusSource.statusText(product) : null;
+        holder.tvStockUpdatedMessage.setText(sync != null ? sync : "Stock updated");
         holder.tvStockUpdatedMessage.setVisibility(
-                product.isStockUpdatedMessageVisible() ? View.VISIBLE : View.GONE
+                sync != null || product.isStockUpdatedMessageVisible() ? View.VISIBLE : View.GONE
         );
 
         holder.itemView.setActivated(position == selectedPos);
@@ -191,7 +243,7 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
                 };
 
                 if (updateStockListener != null) {
-                    updateStockListener.onUpdateStock(product, newStock, done, () -> {
+                    updateStockListener.onUpdateStock(product, newStock, oldStock, done, () -> {
                         Toast.makeText(context, "Update failed", Toast.LENGTH_SHORT).show();
                         undo.run();
                     });
@@ -0,0 +1,115 @@
+package com.kinvo.easyinventory.data;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.SearchText;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory code -> product index for one provider/scope of the local catalog.
+ * Built once from {@link CatalogStore} when the catalog is first needed, then patched by every
+ * catalog write (seed, sync merge, stock update), so a scan resolves with a hash lookup instead of
+ * a query or a download. Barcode matches win over SKU matches. Also carries the
+ * {@link TrigramIndex} that answers substring searches over the same products. Thread-safe.
+ */
+final class BarcodeIndex {
+
+    private final Map<String, Product> byBarcode = new HashMap<>();
+    private final Map<String, Product> bySku = new HashMap<>();
+    private final Map<String, Product> byRowKey = new HashMap<>();
+    private final Map<String, Integer> docOf = new HashMap<>(); // row key -> trigram doc id
+    private TrigramIndex text = new TrigramIndex();
+
+    BarcodeIndex(@NonNull List<Product> products) {
+        for (Product p : products) put(p);
+    }
+
+    @Nullable
+    synchronized Product find(@Nullable String code) {
+        String k = norm(code);
+        if (k.isEmpty()) return null;
+        Product p = byBarcode.get(k);
+        return p != null ? p : bySku.get(k);
+    }
+
+    /** Barcode only (no SKU fallback): used to recognise a scan typed into the search box. */
+    @Nullable
+    synchronized Product findBarcode(@Nullable String code) {
+        String k = norm(code);
+        return k.isEmpty() ? null : byBarcode.get(k);
+    }
+
+    synchronized int size() { return byRowKey.size(); }
+
+    /** Ranked search over name/sku/barcode: substring matches of every token first, then typos. */
+    @NonNull
+    synchronized List<Product> search(@Nullable String query, int limit) {
+        return text.search(SearchText.tokens(query), limit);
+    }
+
+    synchronized void putAll(@NonNull List<Product> products) {
+        for (Product p : products) put(p);
+    }
+
+    /** Insert or replace (by catalog row key), dropping the old codes of a replaced product. */
+    synchronized void put(@Nullable Product p) {
+        if (p == null) return;
+        String key = CatalogStore.rowKey(p);
+        Product old = byRowKey.put(key, p);
+        if (old != null) {
+            byBarcode.remove(norm(old.getBarcode()), old);
+            bySku.remove(norm(old.getSku()), old);
+            Integer doc = docOf.get(key);
+            if (doc != null) text.remove(doc);
+        }
+        docOf.put(key, text.add(p));
+        if (text.needsCompaction()) rebuildText();
+        String bc = norm(p.getBarcode());
+        String sku = norm(p.getSku());
+        if (!bc.isEmpty()) byBarcode.put(bc, p);
+        if (!sku.isEmpty()) bySku.put(sku, p);
+    }
+
+    /** Mirror CatalogStore.updateStock(id): EPOS StockItemId (externalId) or Shopify inventory_item_id. */
+    synchronized void setStock(long id, double qty) {
+        String ext = String.valueOf(id);
+        for (Product p : byRowKey.values()) {
+            Long inv = p.getInventoryItemId();
+            if (ext.equals(p.getExternalId()) || (inv != null && inv == id)) p.setCurrentStock(qty);
+        }
+    }
+
+    /** Local stock of the product updated by id (see {@link #setStock(long, double)}), or null. */
+    @Nullable
+    synchronized Double stockOf(long id) {
+        String ext = String.valueOf(id);
+        for (Product p : byRowKey.values()) {
+            Long inv = p.getInventoryItemId();
+            if (ext.equals(p.getExternalId()) || (inv != null && inv == id)) return p.getCurrentStock();
+        }
+        return null;
+    }
+
+    synchronized void setStock(@NonNull Product p, double qty) {
+        Product mine = byRowKey.get(CatalogStore.rowKey(p));
+        if (mine != null) mine.setCurrentStock(qty);
+    }
+
+    private void rebuildText() {
+        text = new TrigramIndex();
+        docOf.clear();
+        for (Map.Entry<String, Product> e : byRowKey.entrySet()) docOf.put(e.getKey(), text.add(e.getValue()));
+    }
+
+    private static String norm(@Nullable String code) {
+        return TextUtils.isEmpty(code) ? "" : code.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,190 @@
+package com.kinvo.easyinventory.data;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.FuzzyMatch;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local-first repository: wraps the provider repository with the {@link CatalogStore} mirror.
+ * - search / barcode lookup answer from the in-memory {@link BarcodeIndex} over the stored
+ *   catalog once it is seeded (text + typo search, exact barcode/SKU hits); a local miss still
+ *   goes to the provider so new items are found.
+ * - remote results are written through, and the first remote search kicks off the full seed
+ *   ({@link SyncEngine} from zero, so it never runs twice alongside a regular sync).
+ * - if the provider call fails (no signal on the shop floor), local data is used when there is any.
+ * Stock updates always go to the provider; the local row follows on success.
+ */
+public final class CatalogRepository implements InventoryRepository {
+
+    private static final String TAG = "CatalogRepository";
+
+    private final DataSource source;
+    private final InventoryRepository remote;
+
+    public CatalogRepository(@NonNull DataSource source, @NonNull InventoryRepository remote) {
+        this.source = source;
+        this.remote = remote;
+    }
+
+    /** The wrapped provider repository (for provider-specific calls). */
+    @NonNull
+    public InventoryRepository remote() { return remote; }
+
+    @NonNull
+    public DataSource source() { return source; }
+
+    /** Catalog partition: EPOS is per location, Shopify/Clover resolve one location per login. */
+    public long scope(int locationId) {
+        return scopeOf(source, locationId);
+    }
+
+    static long scopeOf(@NonNull DataSource source, int locationId) {
+        return source == DataSource.EPOSNOW ? locationId : 0L;
+    }
+
+    // ============================================================================================
+    // InventoryRepository
+    // ============================================================================================
+
+    @Override
+    public void searchProducts(Context ctx, String query, int locationId, int limit, Callback<List<Product>> cb) {
+        CatalogStore store = CatalogStore.get(ctx);
+        long scope = scope(locationId);
+        // A scanned barcode typed into the search box resolves straight from the code index.
+        BarcodeIndex idx = store.loadedIndex(source, scope);
+        Product scanned = idx != null ? idx.findBarcode(query) : null;
+        if (scanned != null) { cb.onSuccess(Collections.singletonList(scanned)); return; }
+
+        // null = not seeded yet (the DB is opened/queried off the main thread too)
+        ParseStage.run("catalog.search", 0,
+                () -> {
+                    if (!store.isSeeded(source, scope)) return null;
+                    store.index(source, scope); // first catalog load builds the code index
+                    return store.search(source, scope, query, limit);
+                },
+                new Callback<List<Product>>() {
+                    @Override public void onSuccess(List<Product> local) {
+                        if (local == null || (local.isEmpty() && !TextUtils.isEmpty(query))) {
+                            searchRemote(ctx, store, query, locationId, limit, cb);
+                        } else {
+                            cb.onSuccess(local);
+                        }
+                    }
+                    @Override public void onError(Exception e) {
+                        Logx.w(TAG, "local search failed: " + e);
+                        searchRemote(ctx, store, query, locationId, limit, cb);
+                    }
+                });
+    }
+
+    @Override
+    public void cancelPendingSearches() {
+        remote.cancelPendingSearches();
+    }
+
+    @Override
+    public void getProductByBarcode(Context ctx, String barcode, int locationId, Callback<Product> cb) {
+        CatalogStore store = CatalogStore.get(ctx);
+        long scope = scope(locationId);
+        BarcodeIndex idx = store.loadedIndex(source, scope);
+        Product known = idx != null ? idx.find(barcode) : null;
+        if (known != null) { cb.onSuccess(known); return; } // hash hit, no I/O at all
+
+        ParseStage.run("catalog.barcode", 0, () -> store.findByCode(source, scope, barcode),
+                new Callback<Product>() {
+                    @Override public void onSuccess(Product local) {
+                        if (local != null) { cb.onSuccess(local); return; }
+                        remote.getProductByBarcode(ctx, barcode, locationId, new Callback<Product>() {
+                            @Override public void onSuccess(Product p) {
+                                if (p != null) store.write(() -> store.upsert(source, scope, Collections.singletonList(p)));
+                                cb.onSuccess(p);
+                            }
+                            @Override public void onError(Exception e) { cb.onError(e); }
+                        });
+                    }
+                    @Override public void onError(Exception e) {
+                        Logx.w(TAG, "local barcode lookup failed: " + e);
+                        remote.getProductByBarcode(ctx, barcode, locationId, cb);
+                    }
+                });
+    }
+
+    /** Conditional on the stock the local catalog shows (what the user saw), when it is loaded. */
+    @Override
+    public void updateStock(Context ctx, long productIdOrInventoryItemId, int locationId, double newQty,
+                            Callback<Product> cb) {
+        BarcodeIndex idx = CatalogStore.get(ctx).loadedIndex(source, scope(locationId));
+        Double shown = idx != null ? idx.stockOf(productIdOrInventoryItemId) : null;
+        updateStock(ctx, productIdOrInventoryItemId, locationId, newQty, shown, cb);
+    }
+
+    @Override
+    public void updateStock(Context ctx, long productIdOrInventoryItemId, int locationId, double newQty,
+                            @Nullable Double expectedQty, Callback<Product> cb) {
+        CatalogStore store = CatalogStore.get(ctx);
+        long scope = scope(locationId);
+        remote.updateStock(ctx, productIdOrInventoryItemId, locationId, newQty, expectedQty, new Callback<Product>() {
+            @Override public void onSuccess(Product result) {
+                store.write(() -> store.updateStock(source, scope, productIdOrInventoryItemId, newQty));
+                cb.onSuccess(result);
+            }
+            @Override public void onError(Exception e) { cb.onError(e); }
+        });
+    }
+
+    @Override
+    public void fetchRecentUpdates(Context ctx, int locationId, long sinceEpochMs, int limit,
+                                   Callback<List<Product>> cb) {
+        CatalogStore store = CatalogStore.get(ctx);
+        long scope = scope(locationId);
+        remote.fetchRecentUpdates(ctx, locationId, sinceEpochMs, limit, new Callback<List<Product>>() {
+            @Override public void onSuccess(List<Product> result) {
+                if (result != null) store.write(() -> store.upsert(source, scope, result));
+                cb.onSuccess(result);
+            }
+            @Override public void onError(Exception e) { cb.onError(e); }
+        });
+    }
+
+    // ============================================================================================
+    // Internals
+    // ============================================================================================
+
+    private void searchRemote(Context ctx, CatalogStore store, String query, int locationId, int limit,
+                              Callback<List<Product>> cb) {
+        long scope = scope(locationId);
+        remote.searchProducts(ctx, query, locationId, limit, new Callback<List<Product>>() {
+            @Override public void onSuccess(List<Product> result) {
+                if (result != null) store.write(() -> store.upsert(source, scope, result));
+                seed(ctx, store, locationId);
+                if (result == null || TextUtils.isEmpty(query)) { cb.onSuccess(result); return; }
+                // Provider order is arbitrary: rank like the local index does (off main, like parsing).
+                ParseStage.run("catalog.rank", 0, () -> FuzzyMatch.rank(result, query, 0), cb);
+            }
+            @Override public void onError(Exception e) {
+                // Offline / provider down: answer from whatever we have locally.
+                ParseStage.run("catalog.fallback", 0, () -> {
+                    List<Product> local = store.search(source, scope, query, limit);
+                    if (local.isEmpty()) throw e;
+                    Logx.w(TAG, "provider search failed, serving " + local.size() + " local rows: " + e);
+                    return local;
+                }, cb);
+            }
+        });
+    }
+
+    /** First remote search: seed the catalog through {@link SyncEngine} (a sync from zero; one per scope at a time). */
+    private void seed(Context ctx, CatalogStore store, int locationId) {
+        if (store.isSeeded(source, scope(locationId))) return;
+        SyncEngine.sync(ctx, source, remote, locationId, null);
+    }
+}
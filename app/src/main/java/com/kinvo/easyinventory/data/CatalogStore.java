@@ -0,0 +1,404 @@
+package com.kinvo.easyinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.SearchText;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local catalog mirror (SQLite). Singleton via get(Context).
+ * - products: one row per provider product/variant, keyed by (provider, scope, row_key).
+ *   scope = EPOS location id; 0 for Shopify/Clover (single location per login).
+ *   search_key = normalized name + sku + barcode ({@link SearchText}); text search runs on the
+ *   in-memory {@link BarcodeIndex} built from these rows, not in SQL.
+ * - catalog_state: per provider/scope, whether a full seed has been stored and the delta-sync
+ *   high-water mark (newest provider updated-at merged so far, see {@link SyncEngine}).
+ * All query methods block; call them off the main thread. Writes can be queued with {@link #write(Runnable)}.
+ */
+public final class CatalogStore extends SQLiteOpenHelper {
+
+    private static final String TAG = "CatalogStore";
+    private static final String DB_NAME = "catalog.db";
+    private static final int DB_VERSION = 3;
+
+    // ---- Singleton ----
+    private static CatalogStore INSTANCE;
+    public static synchronized CatalogStore get(@NonNull Context ctx) {
+        if (INSTANCE == null) {
+            INSTANCE = new CatalogStore(ctx.getApplicationContext());
+        }
+        return INSTANCE;
+    }
+
+    /** One writer thread so seeds/upserts never contend with each other. */
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, Boolean> seeded = new ConcurrentHashMap<>();
+    private final Map<String, BarcodeIndex> indexes = new ConcurrentHashMap<>();
+
+    private CatalogStore(Context app) {
+        super(app, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true); // readers don't wait for the writer
+    }
+
+    // ============================================================================================
+    // Schema
+    // ============================================================================================
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE products ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "provider TEXT NOT NULL,"
+                + "scope INTEGER NOT NULL,"
+                + "row_key TEXT NOT NULL,"
+                + "external_id TEXT,"
+                + "variant_id INTEGER,"
+                + "inventory_item_id INTEGER,"
+                + "description TEXT,"
+                + "sku TEXT,"
+                + "barcode TEXT,"
+                + "price TEXT,"
+                + "stock REAL,"
+                + "search_key TEXT NOT NULL DEFAULT '',"
+                + "updated_at INTEGER,"
+                + "UNIQUE(provider, scope, row_key))");
+        db.execSQL("CREATE INDEX idx_products_barcode ON products(provider, scope, barcode COLLATE NOCASE)");
+        db.execSQL("CREATE INDEX idx_products_sku ON products(provider, scope, sku COLLATE NOCASE)");
+
+        db.execSQL("CREATE TABLE catalog_state ("
+                + "provider TEXT NOT NULL,"
+                + "scope INTEGER NOT NULL,"
+                + "seeded_at INTEGER NOT NULL DEFAULT 0,"
+                + "watermark INTEGER NOT NULL DEFAULT 0,"
+                + "PRIMARY KEY(provider, scope))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE products ADD COLUMN updated_at INTEGER");
+            db.execSQL("ALTER TABLE catalog_state ADD COLUMN watermark INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 3) {
+            // Text search moved to the in-memory index: the FTS4 table and its triggers only cost writes.
+            db.execSQL("DROP TRIGGER IF EXISTS products_bd");
+            db.execSQL("DROP TRIGGER IF EXISTS products_bu");
+            db.execSQL("DROP TRIGGER IF EXISTS products_ai");
+            db.execSQL("DROP TRIGGER IF EXISTS products_au");
+            db.execSQL("DROP TABLE IF EXISTS products_fts");
+        }
+    }
+
+    // ============================================================================================
+    // Writes
+    // ============================================================================================
+
+    /** Queue a write on the catalog writer thread; failures are logged, never thrown. */
+    public void write(@NonNull Runnable r) {
+        WRITER.execute(() -> {
+            try { r.run(); } catch (Throwable t) { Logx.w(TAG, "catalog write failed: " + t); }
+        });
+    }
+
+    /** Insert or refresh individual products (write-through from remote results). */
+    public void upsert(@NonNull DataSource ds, long scope, @NonNull List<Product> products) {
+        if (products.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsertRows(db, ds, scope, products);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        BarcodeIndex idx = indexes.get(stateKey(ds, scope));
+        if (idx != null) idx.putAll(products);
+    }
+
+    /**
+     * Merge one delta page and advance the high-water mark in the same transaction, so a crash
+     * never leaves the mark ahead of the rows. {@code seeded} marks a completed sync from zero.
+     */
+    public void merge(@NonNull DataSource ds, long scope, @NonNull List<Product> changed, long watermark,
+                      boolean seeded) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsertRows(db, ds, scope, changed);
+            raiseWatermark(db, ds, scope, watermark);
+            if (seeded) markSeeded(db, ds, scope);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (seeded) this.seeded.put(stateKey(ds, scope), true);
+        BarcodeIndex idx = indexes.get(stateKey(ds, scope));
+        if (idx != null) idx.putAll(changed);
+    }
+
+    /** Local stock after a successful remote update; id = EPOS StockItemId or Shopify inventory_item_id. */
+    public void updateStock(@NonNull DataSource ds, long scope, long id, double qty) {
+        ContentValues cv = new ContentValues();
+        cv.put("stock", qty);
+        getWritableDatabase().update("products", cv,
+                "provider=? AND scope=? AND (external_id=? OR inventory_item_id=?)",
+                new String[]{ds.name(), String.valueOf(scope), String.valueOf(id), String.valueOf(id)});
+        BarcodeIndex idx = indexes.get(stateKey(ds, scope));
+        if (idx != null) idx.setStock(id, qty);
+    }
+
+    /** Same, addressed by the product itself (Clover ids are not numeric). */
+    public void updateStock(@NonNull DataSource ds, long scope, @NonNull Product p, double qty) {
+        ContentValues cv = new ContentValues();
+        cv.put("stock", qty);
+        getWritableDatabase().update("products", cv, "provider=? AND scope=? AND row_key=?",
+                new String[]{ds.name(), String.valueOf(scope), rowKey(p)});
+        BarcodeIndex idx = indexes.get(stateKey(ds, scope));
+        if (idx != null) idx.setStock(p, qty);
+    }
+
+    /** Drop every stored product (logout / account switch). */
+    public void wipe() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete("products", null, null);
+            db.delete("catalog_state", null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        seeded.clear();
+        indexes.clear();
+    }
+
+    /** Wipe on the writer thread; used by SecurePrefs.clearAll(). */
+    public static void wipe(@NonNull Context ctx) {
+        CatalogStore store = get(ctx);
+        store.seeded.clear();
+        store.indexes.clear();
+        store.write(store::wipe);
+    }
+
+    // ============================================================================================
+    // Reads
+    // ============================================================================================
+
+    /** High-water mark for delta sync; 0 = never synced. */
+    public long watermark(@NonNull DataSource ds, long scope) {
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT watermark FROM catalog_state WHERE provider=? AND scope=?", args(ds, scope))) {
+            return c.moveToFirst() ? c.getLong(0) : 0L;
+        }
+    }
+
+    public boolean isSeeded(@NonNull DataSource ds, long scope) {
+        String key = stateKey(ds, scope);
+        Boolean cached = seeded.get(key);
+        if (cached != null) return cached;
+        boolean yes;
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT seeded_at FROM catalog_state WHERE provider=? AND scope=?", args(ds, scope))) {
+            yes = c.moveToFirst() && c.getLong(0) > 0;
+        }
+        seeded.put(key, yes);
+        return yes;
+    }
+
+    /**
+     * Catalog search, always on the in-memory index (built from the stored rows on first use):
+     * ranked best first, keys containing every query token, then typo matches (trigram index +
+     * {@link com.kinvo.easyinventory.util.FuzzyMatch}). Blank query lists the catalog.
+     */
+    @NonNull
+    public List<Product> search(@NonNull DataSource ds, long scope, @Nullable String query, int limit) {
+        if (SearchText.tokens(query).length > 0) return index(ds, scope).search(query, limit);
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+        return read(getReadableDatabase().rawQuery("SELECT * FROM products WHERE provider=? AND scope=?"
+                + " ORDER BY description COLLATE NOCASE LIMIT " + max, args(ds, scope)), ds);
+    }
+
+    /** Exact barcode match, else exact SKU match (case-insensitive), via the in-memory index. */
+    @Nullable
+    public Product findByCode(@NonNull DataSource ds, long scope, @Nullable String code) {
+        if (TextUtils.isEmpty(code)) return null;
+        return index(ds, scope).find(code);
+    }
+
+    /** Code index for provider/scope, built from the stored rows on first use (blocking). */
+    @NonNull
+    BarcodeIndex index(@NonNull DataSource ds, long scope) {
+        return indexes.computeIfAbsent(stateKey(ds, scope), k -> {
+            List<Product> all = read(getReadableDatabase().rawQuery(
+                    "SELECT * FROM products WHERE provider=? AND scope=?", args(ds, scope)), ds);
+            Logx.d(TAG, "code index " + k + ": " + all.size() + " rows");
+            return new BarcodeIndex(all);
+        });
+    }
+
+    /** Index if already built, else null (never touches the DB; safe on the main thread). */
+    @Nullable
+    BarcodeIndex loadedIndex(@NonNull DataSource ds, long scope) {
+        return indexes.get(stateKey(ds, scope));
+    }
+
+    /** row key -> {@link #fingerprint} of every stored product in provider/scope (change detection). */
+    @NonNull
+    public Map<String, String> fingerprints(@NonNull DataSource ds, long scope) {
+        Map<String, String> out = new HashMap<>();
+        List<Product> all = read(getReadableDatabase().rawQuery(
+                "SELECT * FROM products WHERE provider=? AND scope=?", args(ds, scope)), ds);
+        for (Product p : all) out.put(rowKey(p), fingerprint(p));
+        return out;
+    }
+
+    // ---- mapping helpers ----
+
+    /** The fields a stock/catalog refresh cares about; equal fingerprints = nothing to merge. */
+    static String fingerprint(@NonNull Product p) {
+        Double stock = p.getCurrentStock();
+        return p.getDescription() + '\u0001' + p.getSku() + '\u0001' + p.getBarcode()
+                + '\u0001' + p.getPriceBig().stripTrailingZeros().toPlainString()
+                + '\u0001' + (stock == null ? "" : String.valueOf(stock.doubleValue()));
+    }
+
+    /** Stable identity of a product inside one provider/scope. */
+    static String rowKey(@NonNull Product p) {
+        if (!TextUtils.isEmpty(p.getExternalId())) return "e:" + p.getExternalId();
+        if (p.getVariantId() != null)              return "v:" + p.getVariantId();
+        if (p.getInventoryItemId() != null)        return "i:" + p.getInventoryItemId();
+        return "d:" + SearchText.normalize(p.getDescription());
+    }
+
+    /** Newest provider updated-at in a batch (0 if the provider reports none). */
+    static long newest(@NonNull List<Product> products) {
+        long max = 0L;
+        for (Product p : products) {
+            if (p != null && p.getUpdatedAtMs() != null) max = Math.max(max, p.getUpdatedAtMs());
+        }
+        return max;
+    }
+
+    private static void markSeeded(SQLiteDatabase db, DataSource ds, long scope) {
+        ensureState(db, ds, scope);
+        ContentValues cv = new ContentValues();
+        cv.put("seeded_at", System.currentTimeMillis());
+        db.update("catalog_state", cv, "provider=? AND scope=?", args(ds, scope));
+    }
+
+    private static void raiseWatermark(SQLiteDatabase db, DataSource ds, long scope, long mark) {
+        if (mark <= 0) return;
+        ensureState(db, ds, scope);
+        db.execSQL("UPDATE catalog_state SET watermark = MAX(watermark, ?) WHERE provider=? AND scope=?",
+                new Object[]{mark, ds.name(), scope});
+    }
+
+    private static void ensureState(SQLiteDatabase db, DataSource ds, long scope) {
+        ContentValues cv = new ContentValues();
+        cv.put("provider", ds.name());
+        cv.put("scope", scope);
+        db.insertWithOnConflict("catalog_state", null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    private static void upsertRows(SQLiteDatabase db, DataSource ds, long scope, List<Product> products) {
+        for (Product p : products) {
+            if (p == null) continue;
+            int n = db.update("products", values(p), "provider=? AND scope=? AND row_key=?",
+                    new String[]{ds.name(), String.valueOf(scope), rowKey(p)});
+            if (n == 0) insert(db, ds, scope, p);
+        }
+    }
+
+    private static void insert(SQLiteDatabase db, DataSource ds, long scope, Product p) {
+        ContentValues cv = values(p);
+        cv.put("provider", ds.name());
+        cv.put("scope", scope);
+        cv.put("row_key", rowKey(p));
+        db.insertWithOnConflict("products", null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    private static ContentValues values(Product p) {
+        ContentValues cv = new ContentValues();
+        cv.put("external_id", p.getExternalId());
+        cv.put("variant_id", p.getVariantId());
+        cv.put("inventory_item_id", p.getInventoryItemId());
+        cv.put("description", p.getDescription());
+        cv.put("sku", p.getSku());
+        cv.put("barcode", p.getBarcode());
+        cv.put("price", p.getPriceBig().toPlainString());
+        cv.put("stock", p.getCurrentStock());
+        cv.put("search_key", p.getSearchKey());
+        if (p.getUpdatedAtMs() != null) cv.put("updated_at", p.getUpdatedAtMs());
+        return cv;
+    }
+
+    private static List<Product> read(Cursor c, DataSource ds) {
+        List<Product> out = new ArrayList<>();
+        try {
+            int iExt = c.getColumnIndexOrThrow("external_id");
+            int iVar = c.getColumnIndexOrThrow("variant_id");
+            int iInv = c.getColumnIndexOrThrow("inventory_item_id");
+            int iDesc = c.getColumnIndexOrThrow("description");
+            int iSku = c.getColumnIndexOrThrow("sku");
+            int iBar = c.getColumnIndexOrThrow("barcode");
+            int iPrice = c.getColumnIndexOrThrow("price");
+            int iStock = c.getColumnIndexOrThrow("stock");
+            int iUpd = c.getColumnIndexOrThrow("updated_at");
+            int iKey = c.getColumnIndex("search_key");
+            while (c.moveToNext()) {
+                Product p = new Product();
+                p.setProvider(ds.name());
+                p.setExternalId(c.getString(iExt));
+                if (!c.isNull(iVar)) p.setVariantId(c.getLong(iVar));
+                if (!c.isNull(iInv)) p.setInventoryItemId(c.getLong(iInv));
+                p.setDescription(c.getString(iDesc));
+                p.setSku(c.getString(iSku));
+                p.setBarcode(c.getString(iBar));
+                p.setPriceBig(price(c.getString(iPrice)));
+                if (!c.isNull(iStock)) p.setCurrentStock(c.getDouble(iStock));
+                if (!c.isNull(iUpd)) p.setUpdatedAtMs(c.getLong(iUpd));
+                if (iKey >= 0 && !c.isNull(iKey)) p.setSearchKey(c.getString(iKey));
+                out.add(p);
+            }
+        } finally {
+            c.close();
+        }
+        return out;
+    }
+
+    private static BigDecimal price(@Nullable String s) {
+        try { return new BigDecimal(s == null ? "0" : s); }
+        catch (Exception ignored) { return BigDecimal.ZERO; }
+    }
+
+    private static String[] args(DataSource ds, long scope) {
+        return new String[]{ds.name(), String.valueOf(scope)};
+    }
+
+    private static String stateKey(DataSource ds, long scope) {
+        return ds.name() + ":" + scope;
+    }
+}
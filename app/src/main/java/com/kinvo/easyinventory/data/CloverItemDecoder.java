@@ -0,0 +1,131 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kinvo.easyinventory.model.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Streaming decoder for Clover /v3/merchants/{m}/items?expand=itemStock.
+ * Reads only id/name/code/alternateName/price/modifiedTime/itemStock; everything else is skipped.
+ */
+final class CloverItemDecoder {
+
+    private CloverItemDecoder() {}
+
+    /** Clover returns { "elements": [ ... ], "href": "..." } (older payloads used "items"). */
+    static List<Product> decode(byte[] body, @Nullable Predicate<Product> filter, int limit) throws IOException {
+        List<Product> out = new ArrayList<>();
+        try (JsonReader r = JsonStreams.open(body)) {
+            if (!JsonStreams.enterRootArray(r, "elements", "items")) return out;
+            while (r.hasNext()) {
+                Product p = readItem(r);
+                if (p == null) continue;
+                if (filter == null || filter.test(p)) {
+                    out.add(p);
+                    if (limit > 0 && out.size() >= limit) break;
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * /item_stocks?expand=item: the item of each stock row, with the row's quantity. A stock change
+     * only moves the row's modifiedTime, so that counts as the item's updated-at too.
+     */
+    static List<Product> decodeStocks(byte[] body) throws IOException {
+        List<Product> out = new ArrayList<>();
+        try (JsonReader r = JsonStreams.open(body)) {
+            if (!JsonStreams.enterRootArray(r, "elements")) return out;
+            while (r.hasNext()) {
+                Stock s = readStock(r);
+                if (s == null || s.item == null) continue;
+                Product p = s.item;
+                p.setCurrentStock(s.qty);
+                Long own = p.getUpdatedAtMs();
+                long changed = Math.max(own != null ? own : 0L, s.modifiedTime);
+                if (changed > 0) p.setUpdatedAtMs(changed);
+                out.add(p);
+            }
+        }
+        return out;
+    }
+
+    @Nullable
+    private static Product readItem(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return null; }
+
+        String id = "", name = "", sku = "", barcode = "";
+        long priceCents = 0L;
+        long modified = 0L;
+        Stock stock = null;
+
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "id":            id = nz(JsonStreams.string(r)); break;
+                case "name":          name = nz(JsonStreams.string(r)); break;
+                case "code":          sku = nz(JsonStreams.string(r)); break;
+                case "alternateName": barcode = nz(JsonStreams.string(r)); break; // not always present
+                case "price":         priceCents = JsonStreams.lng(r, 0L); break;
+                case "modifiedTime":  modified = JsonStreams.lng(r, 0L); break;
+                case "itemStock":     stock = readStock(r); break;
+                default:              r.skipValue();
+            }
+        }
+        r.endObject();
+
+        Product p = new Product();
+        p.setDescription(name);
+        p.setSku(sku);
+        p.setBarcode(barcode);
+        p.setPriceBig(BigDecimal.valueOf(priceCents).movePointLeft(2));
+        p.setCurrentStock(stock != null ? stock.qty : 0d);
+        p.setProvider("CLOVER");
+        // A stock change bumps itemStock.modifiedTime, not necessarily the item's own.
+        long changed = Math.max(modified, stock != null ? stock.modifiedTime : 0L);
+        if (changed > 0) p.setUpdatedAtMs(changed);
+        // Keep Clover's item id for updates:
+        p.setExternalId(id);
+        p.buildSearchKey();
+        return p;
+    }
+
+    private static final class Stock {
+        double qty;
+        long modifiedTime;
+        @Nullable Product item; // only on /item_stocks?expand=item rows
+    }
+
+    /** quantity or stockCount depending on account. */
+    @Nullable
+    private static Stock readStock(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return null; }
+        Double quantity = null, stockCount = null;
+        Stock s = new Stock();
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "quantity":     quantity = JsonStreams.dbl(r, Double.NaN); break;
+                case "stockCount":   stockCount = JsonStreams.dbl(r, Double.NaN); break;
+                case "modifiedTime": s.modifiedTime = JsonStreams.lng(r, 0L); break;
+                case "item":         s.item = readItem(r); break;
+                default:             r.skipValue();
+            }
+        }
+        r.endObject();
+        if (quantity != null && !quantity.isNaN()) s.qty = quantity;
+        else if (stockCount != null && !stockCount.isNaN()) s.qty = stockCount;
+        return s;
+    }
+
+    private static String nz(@Nullable String s) { return s == null ? "" : s; }
+}
@@ -1,34 +1,35 @@
 package com.kinvo.easyinventory.data;
 
 import android.content.Context;
+import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.kinvo.easyinventory.SecurePrefs;
+import com.kinvo.easyinventory.data.http.CallGroup;
+import com.kinvo.easyinventory.data.http.HttpRequest;
+import com.kinvo.easyinventory.data.http.HttpTransport;
 import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.FuzzyMatch;
+import com.kinvo.easyinventory.util.SearchText;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
 /**
- * Clover repository — search via /v3/merchants/{m}/items?expand=itemStock
+ * Clover repository — search via /v3/merchants/{m}/items?expand=itemStock with server-side
+ * filter= predicates (name LIKE, exact code/alternateName/sku) and offset paging,
  * and stock update via POST /v3/merchants/{m}/item_stocks/{itemId}.
  *
  * Sandbox baseUrl is used if the appId ends with ".demo" OR tier is "DEMO".
@@ -36,9 +37,13 @@ import java.util.Map;
 public class CloverRepository implements InventoryRepository {
 
     private static final String TAG = "CloverRepository";
+    private static final int MAX_PAGE = 1000; // Clover's largest allowed page size
 
-    private static RequestQueue queue(Context ctx) {
-        return Volley.newRequestQueue(ctx.getApplicationContext());
+    /** Calls of typed searches (all instances); cancelled when the user types past them. */
+    private static final CallGroup SEARCHES = new CallGroup();
+
+    private static HttpTransport transport(Context ctx) {
+        return NetworkStack.transport(ctx, DataSource.CLOVER);
     }
 
     private static String baseUrl(Context ctx) {
@@ -63,16 +68,18 @@ public class CloverRepository implements InventoryRepository {
         return h;
     }
 
-    private static String verboseVolleyError(com.android.volley.VolleyError e) {
-        NetworkResponse nr = e.networkResponse;
-        if (nr == null) return e.toString();
-        String body;
-        try { body = new String(nr.data, StandardCharsets.UTF_8); } catch (Exception ex) { body = ""; }
-        return e.toString() + " status=" + nr.statusCode + " body=" + body;
+    /** HttpException.toString() already carries status + body. */
+    private static String verboseError(Exception e) {
+        return e.toString();
     }
 
     // --------------------------------------------------------------------------------------------
     // SEARCH
+    // Clover ANDs repeated filter= params, so the OR over fields is one query per field, run in
+    // parallel and merged by item id (exact code hits first, then name matches):
+    //   filter=name LIKE %q%   (paged by offset up to the limit)
+    //   filter=code=q | filter=alternateName=q | filter=sku=q
+    // An empty query pages through the whole item list (catalog seed).
     // --------------------------------------------------------------------------------------------
     @Override
     public void searchProducts(@NonNull Context ctx,
@@ -90,106 +97,251 @@ public class CloverRepository implements InventoryRepository {
                 return;
             }
 
-            int pageLimit = (limit <= 0 ? 100 : Math.min(limit, 100));
-            String url = baseUrl(ctx) + "/v3/merchants/" + merchantId
-                    + "/items?limit=" + pageLimit + "&expand=itemStock";
-
-            JsonObjectRequest req = new JsonObjectRequest(
-                    Request.Method.GET, url, null,
-                    rsp -> {
-                        try {
-                            // Clover returns { "elements": [ ... ], "href": "...", "next": "..." }
-                            JSONArray arr = rsp.optJSONArray("elements");
-                            if (arr == null) arr = rsp.optJSONArray("items"); // safety
-                            List<Product> out = new ArrayList<>();
-                            String needle = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
-                            boolean doFilter = !TextUtils.isEmpty(needle);
-
-                            if (arr != null) {
-                                for (int i = 0; i < arr.length(); i++) {
-                                    JSONObject o = arr.optJSONObject(i);
-                                    if (o == null) continue;
-
-                                    String name    = o.optString("name", "");
-                                    String sku     = o.optString("code", "");
-                                    String barcode = o.optString("alternateName", ""); // not always present
-                                    long priceCents = o.optLong("price", 0L);
-                                    BigDecimal price = BigDecimal.valueOf(priceCents).movePointLeft(2);
-
-                                    double qty = 0d;
-                                    JSONObject stock = o.optJSONObject("itemStock");
-                                    if (stock != null) {
-                                        // quantity or stockCount depending on account
-                                        qty = stock.optDouble("quantity",
-                                                stock.optDouble("stockCount", 0d));
-                                    }
-
-                                    if (doFilter) {
-                                        String ln = name.toLowerCase(Locale.ROOT);
-                                        String ls = sku == null ? "" : sku.toLowerCase(Locale.ROOT);
-                                        String lb = barcode == null ? "" : barcode.toLowerCase(Locale.ROOT);
-                                        if (!(ln.contains(needle) || ls.contains(needle) || lb.contains(needle))) {
-                                            continue;
-                                        }
-                                    }
-
-                                    Product pOut = new Product();
-                                    pOut.setDescription(name);
-                                    pOut.setSku(sku);
-                                    pOut.setBarcode(barcode);
-                                    pOut.setPriceBig(price);
-                                    pOut.setCurrentStock(qty);
-                                    pOut.setProvider("CLOVER");
-                                    // Keep Clover's item id for updates:
-                                    pOut.setExternalId(o.optString("id", ""));
-                                    out.add(pOut);
-                                }
-                            }
+            String term = query == null ? "" : query.trim();
+            if (term.isEmpty()) {
+                fetchPages(transport(ctx), ctx, token, merchantId, "clover.search", null, null, 0, limit,
+                        new ArrayList<>(), cb);
+                return;
+            }
 
-                            cb.onSuccess(out);
-                        } catch (Throwable t) {
-                            cb.onError(asException(t));
-                        }
-                    },
-                    err -> cb.onError(new RuntimeException("Clover search error: " + verboseVolleyError(err)))
-            ) {
-                @Override public Map<String, String> getHeaders() { return headers(token); }
+            HttpTransport http = SEARCHES.over(transport(ctx)); // cancellable by cancelPendingSearches()
+            String needle = term.toLowerCase(Locale.ROOT);
+            int pageLimit = limit <= 0 ? 100 : limit;
+            List<String> exact = new ArrayList<>();
+            for (String field : CODE_FIELDS) exact.add(field + "=" + term);
+
+            // Both legs run at once; callbacks land on the main thread, so plain fields suffice.
+            Object[] legs = new Object[2]; // [0] code hits, [1] name hits (a List, or the Exception)
+            Runnable join = () -> {
+                if (legs[0] == null || legs[1] == null) return;
+                if (legs[0] instanceof Exception) { cb.onError((Exception) legs[0]); return; }
+                @SuppressWarnings("unchecked") List<Product> codeHits = (List<Product>) legs[0];
+                if (legs[1] instanceof Exception) {
+                    // No LIKE support on this account: contains() over the full listing.
+                    Log.w(TAG, "Clover name filter failed, scanning items: " + legs[1]);
+                    fetchPages(http, ctx, token, merchantId, "clover.search", null, matcher(needle), 0, pageLimit,
+                            new ArrayList<>(), new Callback<List<Product>>() {
+                                @Override public void onSuccess(List<Product> scanned) {
+                                    cb.onSuccess(trim(mergeById(codeHits, scanned), limit));
+                                }
+                                @Override public void onError(Exception e) { cb.onError(e); }
+                            });
+                    return;
+                }
+                @SuppressWarnings("unchecked") List<Product> nameHits = (List<Product>) legs[1];
+                cb.onSuccess(trim(mergeById(codeHits, nameHits), limit));
             };
-            req.setRetryPolicy(new DefaultRetryPolicy(12000, 1, 1.0f));
-            queue(ctx).add(req);
+            queryAny(http, ctx, token, merchantId, exact, 1, new Callback<List<Product>>() {
+                @Override public void onSuccess(List<Product> r) { legs[0] = r; join.run(); }
+                @Override public void onError(Exception e) { legs[0] = e; join.run(); }
+            });
+            fetchPages(http, ctx, token, merchantId, "clover.search", "name LIKE %" + term + "%", matcher(needle),
+                    0, pageLimit, new ArrayList<>(), new Callback<List<Product>>() {
+                        @Override public void onSuccess(List<Product> r) { legs[1] = r; join.run(); }
+                        @Override public void onError(Exception e) { legs[1] = e; join.run(); }
+                    });
 
         } catch (Throwable t) {
             cb.onError(asException(t));
         }
     }
 
+    @Override
+    public void cancelPendingSearches() {
+        SEARCHES.cancelAll();
+    }
+
     @Override
     public void getProductByBarcode(@NonNull Context ctx,
                                     @NonNull String barcode,
                                     int locationId,
                                     @NonNull Callback<Product> cb) {
-        // Simple client-side filter by calling searchProducts with a high limit.
-        searchProducts(ctx, barcode, locationId, 100, new Callback<List<Product>>() {
+        SecurePrefs p = SecurePrefs.get(ctx);
+        String token = p.getCloverAccessToken();
+        String merchantId = p.getCloverMerchantId();
+        if (TextUtils.isEmpty(token) || TextUtils.isEmpty(merchantId)) {
+            cb.onError(new IllegalStateException("Missing Clover token or merchant id."));
+            return;
+        }
+        String code = barcode.trim();
+        List<String> exact = new ArrayList<>();
+        for (String field : CODE_FIELDS) exact.add(field + "=" + code);
+        queryAny(transport(ctx), ctx, token, merchantId, exact, 1, new Callback<List<Product>>() {
             @Override public void onSuccess(List<Product> result) {
-                if (result == null) { cb.onSuccess(null); return; }
                 for (Product p : result) {
-                    if (barcode.equalsIgnoreCase(p.getBarcode())) { cb.onSuccess(p); return; }
-                    if (barcode.equalsIgnoreCase(p.getSku()))     { cb.onSuccess(p); return; }
+                    if (code.equalsIgnoreCase(p.getBarcode())) { cb.onSuccess(p); return; }
                 }
-                cb.onSuccess(null);
+                for (Product p : result) {
+                    if (code.equalsIgnoreCase(p.getSku())) { cb.onSuccess(p); return; }
+                }
+                cb.onSuccess(result.isEmpty() ? null : result.get(0));
             }
             @Override public void onError(Exception e) { cb.onError(e); }
         });
     }
 
+    /** Item fields a scanned/typed code can match exactly (code -> Product.sku, alternateName -> barcode). */
+    private static final String[] CODE_FIELDS = { "code", "alternateName", "sku" };
+
+    /**
+     * Run one filtered query per filter in parallel and merge the hits by item id, in filter order.
+     * Fails only if every query fails. Callbacks land on the main thread, so no locking is needed.
+     */
+    private void queryAny(HttpTransport http, Context ctx, String token, String merchantId, List<String> filters,
+                          int limit, Callback<List<Product>> cb) {
+        List<List<Product>> results = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) results.add(null);
+        int[] pending = { filters.size() };
+        Exception[] lastError = { null };
+        for (int i = 0; i < filters.size(); i++) {
+            final int slot = i;
+            fetchPages(http, ctx, token, merchantId, "clover.code", filters.get(i), null, 0, limit, new ArrayList<>(),
+                    new Callback<List<Product>>() {
+                        @Override public void onSuccess(List<Product> r) { results.set(slot, r); finish(); }
+                        @Override public void onError(Exception e) { lastError[0] = e; finish(); }
+
+                        private void finish() {
+                            if (--pending[0] > 0) return;
+                            List<Product> merged = new ArrayList<>();
+                            boolean any = false;
+                            for (List<Product> r : results) {
+                                if (r == null) continue;
+                                any = true;
+                                merged = mergeById(merged, r);
+                            }
+                            if (any || lastError[0] == null) cb.onSuccess(merged);
+                            else cb.onError(lastError[0]);
+                        }
+                    });
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // RECENT UPDATES
+    // GET /v3/merchants/{m}/items?filter=modifiedTime>=X&expand=itemStock&limit=1000&offset=N
+    // then GET /v3/merchants/{m}/item_stocks?filter=modifiedTime>=X&expand=item (stock-only changes)
+    // Pages stream back through PagedCallback.onPage as they are decoded.
+    // --------------------------------------------------------------------------------------------
     @Override
     public void fetchRecentUpdates(@NonNull Context ctx,
                                    int locationId,
                                    long sinceEpochMillis,
                                    int limit,
                                    @NonNull Callback<List<Product>> cb) {
-        // Optional: page /items and filter by modifiedTime here if needed.
-        cb.onSuccess(new ArrayList<>());
+        SecurePrefs p = SecurePrefs.get(ctx);
+        String token = p.getCloverAccessToken();
+        String merchantId = p.getCloverMerchantId();
+        if (TextUtils.isEmpty(token) || TextUtils.isEmpty(merchantId)) {
+            cb.onError(new IllegalStateException("Missing Clover token or merchant id."));
+            return;
+        }
+        HttpTransport http = transport(ctx);
+        String since = "modifiedTime>=" + Math.max(0L, sinceEpochMillis);
+        fetchPages(http, ctx, token, merchantId, "clover.updates", since, null, 0, limit, new ArrayList<>(),
+                new PagedCallback<List<Product>>() {
+                    @Override public void onPage(List<Product> page) { PagedCallback.emit(cb, page); }
+                    @Override public void onSuccess(List<Product> items) {
+                        // The seed already has every item; so does a capped set that is full.
+                        if (sinceEpochMillis <= 0 || (limit > 0 && items.size() >= limit)) { cb.onSuccess(items); return; }
+                        Set<String> seen = new HashSet<>();
+                        for (Product p : items) seen.add(safe(p.getExternalId()));
+                        fetchStockPages(http, ctx, token, merchantId, since, 0, limit, seen, items, cb);
+                    }
+                    @Override public void onError(Exception e) { cb.onError(e); }
+                });
+    }
+
+    /**
+     * A stock-only change bumps itemStock.modifiedTime but not the item's, so the /items filter
+     * misses it: page /item_stocks by its own modifiedTime and add the items not already in
+     * {@code acc}.
+     */
+    private void fetchStockPages(HttpTransport http, Context ctx, String token, String merchantId, String filter,
+                                 int offset, int limit, Set<String> seen, List<Product> acc,
+                                 Callback<List<Product>> cb) {
+        String url = baseUrl(ctx) + "/v3/merchants/" + merchantId + "/item_stocks?expand=item"
+                + "&filter=" + Uri.encode(filter) + "&limit=" + MAX_PAGE + "&offset=" + offset;
+        HttpRequest req = HttpRequest.get(url).headers(headers(token)).timeoutMs(20000);
+        http.enqueue(req,
+                resp -> ParseStage.run("clover.stocks", resp, () -> CloverItemDecoder.decodeStocks(resp.body), rows -> {
+                            List<Product> hits = new ArrayList<>();
+                            for (Product p : rows) if (seen.add(safe(p.getExternalId()))) hits.add(p);
+                            return new PageHits(hits, rows.size());
+                        },
+                        new Callback<PageHits>() {
+                            @Override public void onSuccess(PageHits page) {
+                                List<Product> hits = trim(page.hits, limit > 0 ? limit - acc.size() : 0);
+                                acc.addAll(hits);
+                                if (!hits.isEmpty()) PagedCallback.emit(cb, hits);
+                                if (page.rows >= MAX_PAGE && (limit <= 0 || acc.size() < limit)) {
+                                    fetchStockPages(http, ctx, token, merchantId, filter, offset + page.rows, limit,
+                                            seen, acc, cb);
+                                } else {
+                                    cb.onSuccess(acc);
+                                }
+                            }
+                            @Override public void onError(Exception e) { cb.onError(e); }
+                        }),
+                err -> ParseStage.fail(cb, new RuntimeException("Clover clover.stocks error: " + verboseError(err))));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Offset paging over /items. Clover has no field selection on this endpoint; the decoder
+    // only materialises the mapped fields. With a client-side match the pages are full-size
+    // and the limit counts matches.
+    // --------------------------------------------------------------------------------------------
+
+    private static final class PageHits {
+        final List<Product> hits;
+        final int rows;
+        PageHits(List<Product> hits, int rows) { this.hits = hits; this.rows = rows; }
+    }
+
+    private void fetchPages(HttpTransport http, Context ctx, String token, String merchantId, String stage,
+                            @Nullable String filter, @Nullable Predicate<Product> match, int offset, int limit,
+                            List<Product> acc, Callback<List<Product>> cb) {
+        final int pageSize = limit > 0 && match == null ? Math.min(MAX_PAGE, limit - acc.size()) : MAX_PAGE;
+        String url = baseUrl(ctx) + "/v3/merchants/" + merchantId + "/items?expand=itemStock"
+                + (filter != null ? "&filter=" + Uri.encode(filter) : "")
+                + "&limit=" + pageSize + "&offset=" + offset;
+
+        HttpRequest req = HttpRequest.get(url).headers(headers(token)).timeoutMs(20000);
+        http.enqueue(req,
+                // The decode is shared by coalesced fetches; the match is this caller's own.
+                resp -> ParseStage.run(stage, resp, () -> CloverItemDecoder.decode(resp.body, null, 0), rows -> {
+                            if (match == null) return new PageHits(rows, rows.size());
+                            List<Product> hits = new ArrayList<>();
+                            for (Product p : rows) if (match.test(p)) hits.add(p);
+                            return new PageHits(hits, rows.size());
+                        },
+                        new Callback<PageHits>() {
+                            @Override public void onSuccess(PageHits page) {
+                                acc.addAll(page.hits);
+                                if (!page.hits.isEmpty()) PagedCallback.emit(cb, page.hits);
+                                boolean full = page.rows >= pageSize;
+                                if (full && (limit <= 0 || acc.size() < limit)) {
+                                    fetchPages(http, ctx, token, merchantId, stage, filter, match,
+                                            offset + page.rows, limit, acc, cb);
+                                } else {
+                                    cb.onSuccess(trim(acc, limit));
+                                }
+                            }
+                            @Override public void onError(Exception e) { cb.onError(e); }
+                        }),
+                err -> ParseStage.fail(cb, new RuntimeException("Clover " + stage + " error: " + verboseError(err))));
+    }
+
+    /** a then b, dropping b's items already in a (by Clover item id). */
+    private static List<Product> mergeById(List<Product> a, List<Product> b) {
+        List<Product> out = new ArrayList<>(a);
+        Set<String> seen = new HashSet<>();
+        for (Product p : a) seen.add(safe(p.getExternalId()));
+        for (Product p : b) if (seen.add(safe(p.getExternalId()))) out.add(p);
+        return out;
+    }
+
+    private static List<Product> trim(List<Product> list, int limit) {
+        return limit > 0 && list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
     }
 
     // --------------------------------------------------------------------------------------------
@@ -203,7 +355,7 @@ public class CloverRepository implements InventoryRepository {
     //   "modifiedTime": <epochMillis>
     // }
     //
-    // NOTE: We use StringRequest because Clover may return an empty body; this avoids JSON parse errors.
+    // NOTE: The response body is ignored because Clover may return an empty body.
     // --------------------------------------------------------------------------------------------
     public void updateStock(@NonNull Context ctx,
                             @NonNull Product product,
@@ -235,30 +387,12 @@ public class CloverRepository implements InventoryRepository {
             body.put("quantity", targetQty);
             body.put("modifiedTime", now);
 
-            StringRequest req = new StringRequest(
-                    Request.Method.POST,
-                    url,
-                    resp -> cb.onSuccess(true), // treat any 2xx as success
-                    err  -> cb.onError(new RuntimeException("Clover update error: " + verboseVolleyError(err)))
-            ) {
-                @Override
-                public byte[] getBody() {
-                    return body.toString().getBytes(StandardCharsets.UTF_8);
-                }
-                @Override
-                public String getBodyContentType() {
-                    return "application/json; charset=UTF-8";
-                }
-                @Override
-                public Map<String, String> getHeaders() {
-                    Map<String,String> h = headers(token);
-                    h.put("Content-Type", "application/json");
-                    return h;
-                }
-            };
-
-            req.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.0f));
-            queue(ctx).add(req);
+            HttpRequest req = HttpRequest.post(url, body.toString(), "application/json; charset=UTF-8")
+                    .headers(headers(token))
+                    .timeoutMs(15000);
+            transport(ctx).enqueue(req,
+                    resp -> ParseStage.deliver(cb, true), // treat any 2xx as success
+                    err  -> ParseStage.fail(cb, new RuntimeException("Clover update error: " + verboseError(err))));
 
         } catch (Throwable t) {
             cb.onError(asException(t));
@@ -279,6 +413,16 @@ public class CloverRepository implements InventoryRepository {
                 "Use CloverRepository.updateStock(Context, Product, Callback<Boolean>) with Product.externalId set."));
     }
 
+    /** Every query token in name / sku / barcode, typos tolerated; null = accept all. */
+    @Nullable
+    private static Predicate<Product> matcher(String needleLower) {
+        String[] tokens = SearchText.tokens(needleLower);
+        if (tokens.length == 0) return null;
+        return p -> FuzzyMatch.score(tokens, p.getSearchKey()) != FuzzyMatch.NO_MATCH;
+    }
+
+    private static String safe(String s) { return s == null ? "" : s; }
+
     private static Exception asException(Throwable t) {
         return (t instanceof Exception) ? (Exception) t : new Exception(t);
     }
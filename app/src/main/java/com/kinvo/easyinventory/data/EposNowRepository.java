@@ -5,25 +5,22 @@ import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Base64;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.kinvo.easyinventory.SecurePrefs;
+import com.kinvo.easyinventory.data.http.CallGroup;
+import com.kinvo.easyinventory.data.http.HttpRequest;
+import com.kinvo.easyinventory.data.http.HttpTransport;
 import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.FuzzyMatch;
+import com.kinvo.easyinventory.util.SearchText;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 /** EPOS Now v4 repository: search (Basic) + update via /Inventory/{productId}/Update (Basic). */
@@ -31,9 +28,17 @@ public class EposNowRepository implements InventoryRepository {
 
     private static final String TAG  = "EposNowRepository";
     private static final String BASE = "https://api.eposnowhq.com/api/v4";
+    private static final int SYNC_PAGE = 200; // largest page the stocks endpoint serves
+    private static final int SEARCH_PAGE = 50;
+    private static final int MAX_PAGE_CONCURRENCY = 16;
 
-    private static RequestQueue q(Context ctx) {
-        return Volley.newRequestQueue(ctx.getApplicationContext());
+    private static volatile int pageConcurrency = 4;
+
+    /** Calls of typed searches (all instances); cancelled when the user types past them. */
+    private static final CallGroup SEARCHES = new CallGroup();
+
+    private static HttpTransport q(Context ctx) {
+        return NetworkStack.transport(ctx, DataSource.EPOSNOW);
     }
 
     /** Build Basic auth header from prefs. */
@@ -58,7 +63,7 @@ public class EposNowRepository implements InventoryRepository {
         h.put("Accept", "application/json");
         h.put("User-Agent", "EasyInventory/Android");
         if (isPatchJson) {
-            // For StringRequest we’ll also return this from getBodyContentType.
+            // HttpRequest.post() also carries this as the body content type.
             h.put("Content-Type", "application/json-patch+json");
         } else {
             h.put("Content-Type", "application/json");
@@ -66,16 +71,13 @@ public class EposNowRepository implements InventoryRepository {
         return h;
     }
 
-    private static String verboseVolleyError(com.android.volley.VolleyError e) {
-        NetworkResponse nr = e.networkResponse;
-        if (nr == null) return e.toString();
-        String body;
-        try { body = new String(nr.data, StandardCharsets.UTF_8); } catch (Exception ex) { body = ""; }
-        return e.toString() + " status=" + nr.statusCode + " body=" + body;
+    /** HttpException.toString() already carries status + body. */
+    private static String verboseError(Exception e) {
+        return e.toString();
     }
 
     // --------------------------------------------------------------------------------------------
-    // Search (unchanged — Basic auth)
+    // Search (Basic auth) — pages fetched in parallel, see PageScan
     // --------------------------------------------------------------------------------------------
 
     @Override
@@ -86,134 +88,198 @@ public class EposNowRepository implements InventoryRepository {
                 cb.onError(new IllegalStateException("Missing EPOS auth or locationId"));
                 return;
             }
-
-            final int pageSize = limit > 0 ? Math.min(limit, 50) : 50;
             final String term = query == null ? "" : query.trim();
-            final List<Product> acc = new ArrayList<>();
-
-            String firstUrl = Uri.parse(BASE + "/inventory/stocks").buildUpon()
-                    .appendQueryParameter("locationId", String.valueOf(locationId))
-                    .appendQueryParameter("page", "1")
-                    .appendQueryParameter("limit", String.valueOf(pageSize))
-                    .build()
-                    .toString();
-
-            fetchPage(ctx, auth, firstUrl, term, limit, acc, cb);
+            // The empty query is the catalog seed, which typing must not cancel.
+            HttpTransport http = term.isEmpty() ? q(ctx) : SEARCHES.over(q(ctx));
+            new PageScan(http, auth, locationId, SEARCH_PAGE, "epos.search",
+                    page -> filterPage(page, term), limit, cb).start();
         } catch (Exception e) {
             cb.onError(e);
         }
     }
 
-    private void fetchPage(Context ctx, String auth, String url, String term, int maxResults,
-                           List<Product> acc, Callback<List<Product>> cb) {
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET,
-                url,
-                null,
-                rsp -> {
-                    try {
-                        JSONArray data = rsp.optJSONArray("Data");
-                        if (data != null) {
-                            final boolean doFilter = !TextUtils.isEmpty(term);
-                            final String needle = doFilter ? term.toLowerCase(Locale.ROOT) : "";
-
-                            for (int i = 0; i < data.length(); i++) {
-                                JSONObject o = data.optJSONObject(i);
-                                if (o == null) continue;
-                                Product p = mapStockItem(o);
-                                if (!doFilter || matches(p, needle)) {
-                                    acc.add(p);
-                                    if (maxResults > 0 && acc.size() >= maxResults) break;
-                                }
-                            }
-                        }
+    @Override
+    public void cancelPendingSearches() {
+        SEARCHES.cancelAll();
+    }
 
-                        if (maxResults > 0 && acc.size() >= maxResults) {
-                            cb.onSuccess(trimToLimit(acc, maxResults));
-                            return;
-                        }
+    /** Max concurrent page requests per scan (1 = the old strictly serial walk). */
+    public static void setPageConcurrency(int n) {
+        pageConcurrency = Math.max(1, Math.min(MAX_PAGE_CONCURRENCY, n));
+    }
 
-                        JSONObject links = rsp.optJSONObject("_links");
-                        String nextRel = links != null ? links.optString("NextPage", null) : null;
-                        if (!TextUtils.isEmpty(nextRel) && !"null".equalsIgnoreCase(nextRel)) {
-                            String hostBase = "https://api.eposnowhq.com";
-                            String nextUrl = nextRel.startsWith("http") ? nextRel : (hostBase + nextRel);
-                            fetchPage(ctx, auth, nextUrl, term, maxResults, acc, cb);
-                        } else {
-                            cb.onSuccess(acc);
-                        }
-                    } catch (Exception e) {
-                        cb.onError(e);
-                    }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return commonHeaders(auth, false); }
-        };
-
-        req.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.0f));
-        q(ctx).add(req);
+    /** Filter of one decoded page, run on the parse executor (the decode itself may be shared). */
+    private interface PageFilter {
+        PageHits apply(EposStockDecoder.Page page) throws Exception;
     }
 
-    private static Product mapStockItem(JSONObject o) {
-        Product p = new Product();
+    /**
+     * Bounded-concurrency walk of /inventory/stocks?page=N.
+     * Page 1 is fetched alone; if it has a NextPage, up to {@link #pageConcurrency} pages are kept in
+     * flight. The stocks feed gives no total, so the end is the first page without a NextPage link;
+     * speculative requests past it are cancelled. Pages are merged strictly in page order, and
+     * everything still in flight is cancelled once {@code maxResults} rows are merged.
+     * All state lives on the main thread (ParseStage delivers there).
+     */
+    private final class PageScan {
+        private final HttpTransport http;
+        private final String auth;
+        private final int locationId;
+        private final int pageSize;
+        private final String stage;
+        private final PageFilter filter;
+        private final int maxResults;
+        private final Callback<List<Product>> cb;
+        private final int concurrency = pageConcurrency;
+
+        private final List<Product> acc = new ArrayList<>();
+        private final Map<Integer, PageHits> arrived = new HashMap<>();
+        private final Map<Integer, HttpTransport.Call> inflight = new HashMap<>();
+        private int nextToIssue = 1;
+        private int nextToMerge = 1;
+        private int lastPage = Integer.MAX_VALUE;
+        private boolean finished;
+
+        PageScan(HttpTransport http, String auth, int locationId, int pageSize, String stage, PageFilter filter,
+                 int maxResults, Callback<List<Product>> cb) {
+            this.http = http;
+            this.auth = auth;
+            this.locationId = locationId;
+            this.pageSize = pageSize;
+            this.stage = stage;
+            this.filter = filter;
+            this.maxResults = maxResults;
+            this.cb = cb;
+        }
 
-        long productId   = o.optLong("ProductId", 0L);
-        int  stockItemId = o.optInt("StockItemId", 0);
+        void start() { issue(nextToIssue++); }
 
-        // Keep externalId = StockItemId (legacy). We’ll resolve ProductId during update.
-        String externalId = stockItemId > 0 ? String.valueOf(stockItemId)
-                : (productId > 0 ? String.valueOf(productId) : "");
+        private void issue(int page) {
+            String url = Uri.parse(BASE + "/inventory/stocks").buildUpon()
+                    .appendQueryParameter("locationId", String.valueOf(locationId))
+                    .appendQueryParameter("page", String.valueOf(page))
+                    .appendQueryParameter("limit", String.valueOf(pageSize))
+                    .build()
+                    .toString();
+            HttpRequest req = HttpRequest.get(url).headers(commonHeaders(auth, false)).timeoutMs(15000);
+            Callback<PageHits> done = new Callback<PageHits>() {
+                @Override public void onSuccess(PageHits hits) { onPage(page, hits); }
+                @Override public void onError(Exception e) { onFailed(page, e); }
+            };
+            inflight.put(page, http.enqueue(req,
+                    resp -> ParseStage.run(stage, resp, () -> EposStockDecoder.decode(resp.body), filter::apply, done),
+                    err -> ParseStage.fail(done, new RuntimeException(verboseError(err)))));
+        }
 
-        String name = o.optString("ProductName",
-                o.optString("Description", ""));
+        private void onPage(int page, PageHits hits) {
+            inflight.remove(page);
+            if (finished) return;
+            if ((!hasNext(hits.nextPage) || hits.rows == 0) && page < lastPage) {
+                lastPage = page;
+                cancelAfter(lastPage);
+            }
+            arrived.put(page, hits);
+
+            while (arrived.containsKey(nextToMerge)) {
+                List<Product> rows = arrived.remove(nextToMerge).products;
+                nextToMerge++;
+                if (maxResults > 0 && acc.size() + rows.size() > maxResults) {
+                    rows = rows.subList(0, maxResults - acc.size());
+                }
+                acc.addAll(rows);
+                if (!rows.isEmpty()) PagedCallback.emit(cb, new ArrayList<>(rows));
+                if (maxResults > 0 && acc.size() >= maxResults) { finish(); return; }
+            }
+            if (nextToMerge > lastPage) { finish(); return; }
+
+            while (inflight.size() < concurrency && nextToIssue <= lastPage) issue(nextToIssue++);
+        }
+
+        private void onFailed(int page, Exception e) {
+            inflight.remove(page);
+            if (finished || page > lastPage) return; // a speculative page past the end; ignore
+            finished = true;
+            cancelAfter(0);
+            cb.onError(e);
+        }
+
+        private void finish() {
+            finished = true;
+            cancelAfter(0);
+            cb.onSuccess(acc);
+        }
 
-        BigDecimal price = BigDecimal.ZERO;
-        if (o.has("SalePriceIncTax")) {
-            price = new BigDecimal(String.valueOf(o.optDouble("SalePriceIncTax", 0d)));
-        } else if (o.has("SalePriceExcTax")) {
-            price = new BigDecimal(String.valueOf(o.optDouble("SalePriceExcTax", 0d)));
+        private void cancelAfter(int page) {
+            Iterator<Map.Entry<Integer, HttpTransport.Call>> it = inflight.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, HttpTransport.Call> e = it.next();
+                if (e.getKey() > page) { e.getValue().cancel(); it.remove(); }
+            }
         }
+    }
 
-        p.setExternalId(externalId);
-        p.setSku(o.optString("Sku", externalId));
-        p.setDescription(name);
-        p.setBarcode(o.optString("Barcode", ""));
-        p.setCurrentStock(o.optDouble("CurrentStock", 0d));
-        p.setProvider("EPOSNOW");
-        p.setPriceBig(price);
-        return p;
+    private static boolean hasNext(String nextRel) {
+        return !TextUtils.isEmpty(nextRel) && !"null".equalsIgnoreCase(nextRel);
     }
 
-    private static boolean matches(Product p, String needle) {
-        String name = safe(p.getDescription());
-        String barcode = safe(p.getBarcode());
-        String sku = safe(p.getSku());
-        return name.toLowerCase(Locale.ROOT).contains(needle)
-                || barcode.toLowerCase(Locale.ROOT).contains(needle)
-                || sku.toLowerCase(Locale.ROOT).contains(needle);
+    /** Filtered products of one page plus its NextPage link. */
+    private static final class PageHits {
+        final List<Product> products = new ArrayList<>();
+        String nextPage;
+        int rows; // unfiltered row count of the page
     }
 
-    private static List<Product> trimToLimit(List<Product> acc, int limit) {
-        if (limit <= 0 || acc.size() <= limit) return acc;
-        return new ArrayList<>(acc.subList(0, limit));
+    private static PageHits filterPage(EposStockDecoder.Page page, String term) {
+        final String[] tokens = SearchText.tokens(term);
+        final boolean doFilter = tokens.length > 0;
+
+        PageHits hits = new PageHits();
+        hits.nextPage = page.nextPage;
+        hits.rows = page.rows.size();
+        for (EposStockDecoder.Row row : page.rows) {
+            Product p = row.product;
+            if (!doFilter || matches(p, tokens)) {
+                hits.products.add(p);
+            }
+        }
+        return hits;
     }
 
-    private static String safe(String s) { return s == null ? "" : s; }
+    /** Every token in name / barcode / sku, typos tolerated ("choclate" finds "Chocolate"). */
+    private static boolean matches(Product p, String[] tokens) {
+        return FuzzyMatch.score(tokens, p.getSearchKey()) != FuzzyMatch.NO_MATCH;
+    }
 
+    /** Exact barcode / sku match (case-insensitive); a scanned code is never typo-matched. */
     @Override
     public void getProductByBarcode(Context ctx, String barcode, int locationId, Callback<Product> cb) {
-        searchProducts(ctx, barcode, locationId, 1, new Callback<List<Product>>() {
+        String auth = resolveAuthHeader(ctx);
+        if (TextUtils.isEmpty(auth) || locationId <= 0) {
+            cb.onError(new IllegalStateException("Missing EPOS auth or locationId"));
+            return;
+        }
+        final String code = barcode == null ? "" : barcode.trim();
+        if (code.isEmpty()) { cb.onSuccess(null); return; }
+        new PageScan(q(ctx), auth, locationId, SEARCH_PAGE, "epos.barcode", page -> {
+            PageHits hits = new PageHits();
+            hits.nextPage = page.nextPage;
+            hits.rows = page.rows.size();
+            for (EposStockDecoder.Row row : page.rows) {
+                Product p = row.product;
+                if (code.equalsIgnoreCase(p.getBarcode()) || code.equalsIgnoreCase(p.getSku())) hits.products.add(p);
+            }
+            return hits;
+        }, 1, new Callback<List<Product>>() {
             @Override public void onSuccess(List<Product> result) {
                 cb.onSuccess((result != null && !result.isEmpty()) ? result.get(0) : null);
             }
             @Override public void onError(Exception e) { cb.onError(e); }
-        });
+        }).start();
     }
 
     // --------------------------------------------------------------------------------------------
     // UPDATE STOCK — POST /Inventory/{productId}/Update with JSON-**array** body (absolute qty)
-    // Uses StringRequest to tolerate empty/204 responses (no ParseError).
+    // The response body is ignored to tolerate empty/204 responses (no parse errors).
     // --------------------------------------------------------------------------------------------
 
     @Override
@@ -236,102 +302,105 @@ public class EposNowRepository implements InventoryRepository {
                 .build()
                 .toString();
 
-        JsonObjectRequest getReq = new JsonObjectRequest(
-                Request.Method.GET, lookupUrl, null,
-                rsp -> {
-                    try {
-                        JSONArray data = rsp.optJSONArray("Data");
-                        if (data == null || data.length() == 0) {
-                            cb.onError(new RuntimeException("No stocks found at this location."));
-                            return;
-                        }
-
-                        JSONObject match = null;
-                        long productIdFound = 0L;
-                        int minStock = 0, maxStock = 0;
-                        boolean alerts = true;
-
-                        for (int i = 0; i < data.length(); i++) {
-                            JSONObject row = data.optJSONObject(i);
-                            if (row == null) continue;
-
-                            long productId = row.optLong("ProductId", 0L);
-                            int stockItemId = row.optInt("StockItemId", 0);
-
-                            if (productIdOrStockItemId == productId || productIdOrStockItemId == stockItemId) {
-                                match = row;
-                                productIdFound = productId;
-                                minStock = (int) Math.round(row.optDouble("MinimumStock", 0d));
-                                maxStock = (int) Math.round(row.optDouble("MaximumStock", 0d));
-                                alerts   = row.has("Alerts") ? row.optBoolean("Alerts", true) : true;
-                                break;
-                            }
+        HttpRequest getReq = HttpRequest.get(lookupUrl).headers(commonHeaders(auth, false)).timeoutMs(15000);
+        q(ctx).enqueue(getReq,
+                resp -> ParseStage.run("epos.lookup", resp, () -> {
+                    List<EposStockDecoder.Row> data = EposStockDecoder.decode(resp.body).rows;
+                    if (data.isEmpty()) {
+                        throw new RuntimeException("No stocks found at this location.");
+                    }
+                    for (EposStockDecoder.Row row : data) {
+                        if (productIdOrStockItemId == row.productId || productIdOrStockItemId == row.stockItemId) {
+                            if (row.productId > 0) return row;
+                            break;
                         }
+                    }
+                    throw new RuntimeException("Product not found for id=" + productIdOrStockItemId);
+                }, new Callback<EposStockDecoder.Row>() {
+                    @Override public void onSuccess(EposStockDecoder.Row match) {
+                        postUpdate(ctx, auth, locationId, newQty, match, cb);
+                    }
+                    @Override public void onError(Exception e) { cb.onError(e); }
+                }),
+                err -> ParseStage.fail(cb, new RuntimeException("EPOS lookup error: " + verboseError(err))));
+    }
 
-                        if (match == null || productIdFound <= 0) {
-                            cb.onError(new RuntimeException("Product not found for id=" + productIdOrStockItemId));
-                            return;
-                        }
+    private void postUpdate(Context ctx, String auth, int locationId, double newQty,
+                            EposStockDecoder.Row match, Callback<Product> cb) {
+        try {
+            final long productIdFound = match.productId;
+
+            // 2) Build JSON-ARRAY body (per EPOS docs/curl)
+            String url = BASE + "/Inventory/" + productIdFound + "/Update";
+            JSONArray body = new JSONArray();
+            JSONObject entry = new JSONObject();
+            entry.put("locationId", locationId);
+            entry.put("currentStock", (int) Math.round(newQty));
+            entry.put("minimumStock", match.minimumStock);
+            entry.put("maximumStock", match.maximumStock);
+            entry.put("productId", productIdFound);
+            entry.put("alerts", match.alerts);
+            body.put(entry);
+
+            // 3) POST (empty/204 body is fine)
+            Product p = match.product;
+            HttpRequest postReq = HttpRequest.post(url, body.toString(), "application/json-patch+json; charset=UTF-8")
+                    .headers(commonHeaders(auth, true))
+                    .timeoutMs(15000);
+            q(ctx).enqueue(postReq,
+                    postResp -> {
+                        // Treat any 2xx as success; body may be empty
+                        p.setCurrentStock(newQty);
+                        ParseStage.deliver(cb, p);
+                    },
+                    err -> ParseStage.fail(cb, new RuntimeException("EPOS update error: " + verboseError(err))));
 
-                        // 2) Build JSON-ARRAY body (per EPOS docs/curl)
-                        String url = BASE + "/Inventory/" + productIdFound + "/Update";
-                        JSONArray body = new JSONArray();
-                        JSONObject entry = new JSONObject();
-                        entry.put("locationId", locationId);
-                        entry.put("currentStock", (int) Math.round(newQty));
-                        entry.put("minimumStock", minStock);
-                        entry.put("maximumStock", maxStock);
-                        entry.put("productId", productIdFound);
-                        entry.put("alerts", alerts);
-                        body.put(entry);
-
-                        // 3) POST with StringRequest (handles empty/204 OK)
-                        JSONObject finalMatch = match;
-                        StringRequest postReq = new StringRequest(
-                                Request.Method.POST,
-                                url,
-                                resp -> {
-                                    // Treat any 2xx as success; resp may be empty
-                                    Product p = mapStockItem(finalMatch);
-                                    p.setCurrentStock(newQty);
-                                    cb.onSuccess(p);
-                                },
-                                err -> cb.onError(new RuntimeException("EPOS update error: " + verboseVolleyError(err)))
-                        ) {
-                            @Override
-                            public byte[] getBody() {
-                                return body.toString().getBytes(StandardCharsets.UTF_8);
-                            }
-
-                            @Override
-                            public String getBodyContentType() {
-                                return "application/json-patch+json; charset=UTF-8";
-                            }
-
-                            @Override
-                            public Map<String, String> getHeaders() {
-                                return commonHeaders(auth, true);
-                            }
-                        };
-
-                        postReq.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.0f));
-                        q(ctx).add(postReq);
-
-                    } catch (Exception e) {
-                        cb.onError(e);
-                    }
-                },
-                err -> cb.onError(new RuntimeException("EPOS lookup error: " + verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return commonHeaders(auth, false); }
-        };
-
-        getReq.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.0f));
-        q(ctx).add(getReq);
+        } catch (Exception e) {
+            cb.onError(e);
+        }
     }
 
+    // --------------------------------------------------------------------------------------------
+    // RECENT UPDATES — v4 /inventory/stocks has no modified-since filter, so pages are diffed
+    // against the local catalog copy and only rows whose name/sku/barcode/price/stock changed
+    // are returned (and streamed to a PagedCallback). since == 0 returns every row (initial seed).
+    // --------------------------------------------------------------------------------------------
+
     @Override
     public void fetchRecentUpdates(Context ctx, int locationId, long sinceEpochMs, int limit, Callback<List<Product>> cb) {
-        cb.onError(new UnsupportedOperationException("EPOS fetchRecentUpdates not implemented yet"));
+        String auth = resolveAuthHeader(ctx);
+        if (TextUtils.isEmpty(auth) || locationId <= 0) {
+            cb.onError(new IllegalStateException("Missing EPOS auth or locationId"));
+            return;
+        }
+        if (sinceEpochMs <= 0) {
+            scanChanged(ctx, auth, locationId, null, limit, cb);
+            return;
+        }
+        CatalogStore store = CatalogStore.get(ctx);
+        ParseStage.run("epos.fingerprints", 0, () -> store.fingerprints(DataSource.EPOSNOW, locationId),
+                new Callback<Map<String, String>>() {
+                    @Override public void onSuccess(Map<String, String> known) {
+                        scanChanged(ctx, auth, locationId, known, limit, cb);
+                    }
+                    @Override public void onError(Exception e) { cb.onError(e); }
+                });
+    }
+
+    /** @param known row key -> fingerprint of the local copy; null = everything counts as changed */
+    private void scanChanged(Context ctx, String auth, int locationId, Map<String, String> known, int limit,
+                             Callback<List<Product>> cb) {
+        new PageScan(q(ctx), auth, locationId, SYNC_PAGE, "epos.updates", page -> {
+            PageHits hits = new PageHits();
+            hits.nextPage = page.nextPage;
+            hits.rows = page.rows.size();
+            for (EposStockDecoder.Row row : page.rows) {
+                Product p = row.product;
+                if (known == null || !CatalogStore.fingerprint(p).equals(known.get(CatalogStore.rowKey(p)))) {
+                    hits.products.add(p);
+                }
+            }
+            return hits;
+        }, limit, cb).start();
     }
 }
@@ -0,0 +1,122 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kinvo.easyinventory.model.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoder for EPOS Now v4 /inventory/stocks pages:
+ * { "Data": [ {StockItemId, ProductId, ProductName, ...}, ... ], "_links": { "NextPage": "..." } }
+ * Only the fields we map (plus min/max/alerts needed to write stock back) are read.
+ */
+final class EposStockDecoder {
+
+    private EposStockDecoder() {}
+
+    /** One stock row at a location. */
+    static final class Row {
+        long productId;
+        int stockItemId;
+        int minimumStock;
+        int maximumStock;
+        boolean alerts = true;
+        final Product product = new Product();
+    }
+
+    static final class Page {
+        final List<Row> rows = new ArrayList<>();
+        @Nullable String nextPage;
+    }
+
+    static Page decode(byte[] body) throws IOException {
+        Page page = new Page();
+        try (JsonReader r = JsonStreams.open(body)) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) return page;
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "Data":   readRows(r, page.rows); break;
+                    case "_links": page.nextPage = readNext(r); break;
+                    default:       r.skipValue();
+                }
+            }
+        }
+        return page;
+    }
+
+    private static void readRows(JsonReader r, List<Row> out) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_ARRAY) { r.skipValue(); return; }
+        r.beginArray();
+        while (r.hasNext()) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); continue; }
+            out.add(readRow(r));
+        }
+        r.endArray();
+    }
+
+    private static Row readRow(JsonReader r) throws IOException {
+        Row row = new Row();
+        String productName = null, description = null, sku = null, barcode = null;
+        Double incTax = null, excTax = null;
+        double stock = 0d;
+
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "ProductId":       row.productId = JsonStreams.lng(r, 0L); break;
+                case "StockItemId":     row.stockItemId = (int) JsonStreams.lng(r, 0L); break;
+                case "ProductName":     productName = JsonStreams.string(r); break;
+                case "Description":     description = JsonStreams.string(r); break;
+                case "Sku":             sku = JsonStreams.string(r); break;
+                case "Barcode":         barcode = JsonStreams.string(r); break;
+                case "CurrentStock":    stock = JsonStreams.dbl(r, 0d); break;
+                case "SalePriceIncTax": incTax = JsonStreams.dbl(r, 0d); break;
+                case "SalePriceExcTax": excTax = JsonStreams.dbl(r, 0d); break;
+                case "MinimumStock":    row.minimumStock = (int) Math.round(JsonStreams.dbl(r, 0d)); break;
+                case "MaximumStock":    row.maximumStock = (int) Math.round(JsonStreams.dbl(r, 0d)); break;
+                case "Alerts":          row.alerts = JsonStreams.bool(r, true); break;
+                default:                r.skipValue();
+            }
+        }
+        r.endObject();
+
+        // Keep externalId = StockItemId (legacy). We resolve ProductId during update.
+        String externalId = row.stockItemId > 0 ? String.valueOf(row.stockItemId)
+                : (row.productId > 0 ? String.valueOf(row.productId) : "");
+
+        BigDecimal price = BigDecimal.ZERO;
+        if (incTax != null)      price = new BigDecimal(String.valueOf(incTax));
+        else if (excTax != null) price = new BigDecimal(String.valueOf(excTax));
+
+        Product p = row.product;
+        p.setExternalId(externalId);
+        p.setSku(sku != null ? sku : externalId);
+        p.setDescription(productName != null ? productName : (description != null ? description : ""));
+        p.setBarcode(barcode != null ? barcode : "");
+        p.setCurrentStock(stock);
+        p.setProvider("EPOSNOW");
+        p.setPriceBig(price);
+        p.buildSearchKey();
+        return row;
+    }
+
+    @Nullable
+    private static String readNext(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return null; }
+        String next = null;
+        r.beginObject();
+        while (r.hasNext()) {
+            if ("NextPage".equals(r.nextName())) next = JsonStreams.string(r);
+            else r.skipValue();
+        }
+        r.endObject();
+        return next;
+    }
+}
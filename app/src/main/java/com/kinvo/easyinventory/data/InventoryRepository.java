@@ -2,6 +2,8 @@ package com.kinvo.easyinventory.data;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import com.kinvo.easyinventory.model.Product;
 
 import java.util.List;
@@ -13,15 +15,54 @@ public interface InventoryRepository {
         void onError(Exception e);
     }
 
+    /**
+     * Callback for calls that page through a large listing: each page is handed to {@link #onPage}
+     * as soon as it is decoded, then {@code onSuccess} receives all rows. Plain Callbacks simply
+     * get the final list.
+     */
+    interface PagedCallback<T> extends Callback<T> {
+        void onPage(T page);
+
+        /** Forward {@code page} if {@code cb} wants pages. */
+        @SuppressWarnings("unchecked")
+        static <T> void emit(Callback<T> cb, T page) {
+            if (cb instanceof PagedCallback) ((PagedCallback<T>) cb).onPage(page);
+        }
+    }
+
     void searchProducts(Context ctx, String query, int locationId, int limit,
                         Callback<List<Product>> cb);
 
+    /**
+     * Cancel the provider calls of searches still in flight (the user has typed past them).
+     * Their callbacks never fire. Catalog seeding and sync are not affected.
+     */
+    default void cancelPendingSearches() {}
+
     void getProductByBarcode(Context ctx, String barcode, int locationId,
                              Callback<Product> cb);
 
     void updateStock(Context ctx, long productIdOrInventoryItemId, int locationId,
                      double newQty, Callback<Product> cb);
 
+    /**
+     * Compare-and-set variant: applied only if the provider still holds {@code expectedQty}, else
+     * {@code cb} gets a {@link StockConflictException}. null = unconditional. Providers without a
+     * conditional write ignore {@code expectedQty}.
+     */
+    default void updateStock(Context ctx, long productIdOrInventoryItemId, int locationId,
+                             double newQty, @Nullable Double expectedQty, Callback<Product> cb) {
+        updateStock(ctx, productIdOrInventoryItemId, locationId, newQty, cb);
+    }
+
+    /**
+     * Products changed at or after {@code sinceEpochMs} (provider clock), paging through the whole
+     * change set (pages are streamed to a {@link PagedCallback}); {@code limit <= 0} = no cap. Products carry {@link Product#getUpdatedAtMs()} when
+     * the provider reports it. Used by {@link SyncEngine}.
+     * Not every provider can filter by time: EPOS Now reads its whole stock listing on every call and
+     * returns what differs from the local copy, using {@code sinceEpochMs} only as "0 = everything".
+     * Its cost is a full pull regardless of the mark, so {@link SyncEngine} spaces such syncs out.
+     */
     void fetchRecentUpdates(Context ctx, int locationId, long sinceEpochMs, int limit,
                             Callback<List<Product>> cb);
 }
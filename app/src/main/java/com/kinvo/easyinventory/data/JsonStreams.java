@@ -0,0 +1,114 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/** Small lenient helpers on top of Gson's streaming JsonReader (null-safe, numbers-as-strings ok). */
+final class JsonStreams {
+
+    // Not ThreadLocal.withInitial: that is API 26, minSdk is 24.
+    private static final ThreadLocal<SimpleDateFormat> ISO = new ThreadLocal<SimpleDateFormat>() {
+        @Override protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
+        }
+    };
+
+    private JsonStreams() {}
+
+    static JsonReader open(byte[] body) {
+        JsonReader r = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        r.setLenient(true);
+        return r;
+    }
+
+    /** String value; numbers/booleans are stringified, JSON null -> null. */
+    @Nullable
+    static String string(JsonReader r) throws IOException {
+        JsonToken t = r.peek();
+        switch (t) {
+            case NULL:    r.nextNull(); return null;
+            case BOOLEAN: return String.valueOf(r.nextBoolean());
+            case STRING:
+            case NUMBER:  return r.nextString();
+            default:      r.skipValue(); return null;
+        }
+    }
+
+    static double dbl(JsonReader r, double fallback) throws IOException {
+        String s = string(r);
+        if (s == null || s.isEmpty()) return fallback;
+        try { return Double.parseDouble(s); } catch (NumberFormatException e) { return fallback; }
+    }
+
+    static long lng(JsonReader r, long fallback) throws IOException {
+        String s = string(r);
+        if (s == null || s.isEmpty()) return fallback;
+        try { return Long.parseLong(s); }
+        catch (NumberFormatException e) {
+            try { return (long) Double.parseDouble(s); } catch (NumberFormatException e2) { return fallback; }
+        }
+    }
+
+    static boolean bool(JsonReader r, boolean fallback) throws IOException {
+        JsonToken t = r.peek();
+        if (t == JsonToken.BOOLEAN) return r.nextBoolean();
+        String s = string(r);
+        return s == null ? fallback : Boolean.parseBoolean(s);
+    }
+
+    /** Step into an object value; anything else is skipped and false returned. */
+    static boolean enterObject(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return false; }
+        r.beginObject();
+        return true;
+    }
+
+    /** Position the reader inside the array stored under {@code key} of the root object; false if absent. */
+    static boolean enterRootArray(JsonReader r, String... keys) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) return false;
+        r.beginObject();
+        while (r.hasNext()) {
+            String name = r.nextName();
+            for (String k : keys) {
+                if (k.equals(name) && r.peek() == JsonToken.BEGIN_ARRAY) {
+                    r.beginArray();
+                    return true;
+                }
+            }
+            r.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * ISO-8601 timestamp with offset ("2024-05-01T10:00:00-04:00" / "...Z"), optionally with
+     * fractional seconds ("10:00:00.123Z") -> epoch ms; 0 if unparseable.
+     */
+    static long isoMillis(@Nullable String s) {
+        if (s == null || s.isEmpty()) return 0L;
+        long frac = 0L;
+        if (s.length() > 19 && s.charAt(19) == '.') { // SimpleDateFormat has no optional sections
+            int end = 20;
+            while (end < s.length() && Character.isDigit(s.charAt(end))) end++;
+            for (int i = 20; i < 23; i++) frac = frac * 10 + (i < end ? s.charAt(i) - '0' : 0);
+            s = s.substring(0, 19) + s.substring(end);
+        }
+        try {
+            Date d = ISO.get().parse(s);
+            return d != null ? d.getTime() + frac : 0L;
+        } catch (ParseException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.kinvo.easyinventory.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.data.http.CircuitBreaker;
+import com.kinvo.easyinventory.data.http.ConditionalCache;
+import com.kinvo.easyinventory.data.http.HttpRequest;
+import com.kinvo.easyinventory.data.http.HttpTransport;
+import com.kinvo.easyinventory.data.http.OkHttpTransport;
+import com.kinvo.easyinventory.data.http.ResilientTransport;
+import com.kinvo.easyinventory.data.http.SingleFlight;
+import com.kinvo.easyinventory.data.http.VolleyTransport;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Process-wide network stack shared by every InventoryRepository.
+ * - ONE {@link HttpTransport}; OkHttp by default (HTTP/2 multiplexing, brotli/gzip, keep-alive pool).
+ * - Volley is still available as a fallback transport: ONE RequestQueue with a bounded dispatcher
+ *   over one HurlStack + SSLSocketFactory, so sockets are pooled and TLS sessions resumed.
+ * - Each provider talks through a {@link ResilientTransport} (jittered backoff + its own
+ *   {@link CircuitBreaker}) under one {@link SingleFlight} that coalesces identical GETs,
+ *   see {@link #transport(Context, DataSource)}.
+ * - Catalog listing pages are revalidated with ETag / If-None-Match through a disk
+ *   {@link ConditionalCache}, so an unchanged page costs a 304.
+ * Started lazily on first use; {@link #shutdown()} stops it (called on logout).
+ */
+public final class NetworkStack {
+
+    private static final String TAG = "NetworkStack";
+
+    /** Which transport implementation the repositories talk through. */
+    public enum Transport { OKHTTP, VOLLEY }
+
+    private static final int DISPATCHER_THREADS   = 4;                // Volley default; bounded
+    private static final int MAX_REQUESTS         = 32;               // OkHttp dispatcher, all hosts
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    private static final int MAX_IDLE_CONNECTIONS = 8;                // keep-alive pool
+    private static final int KEEP_ALIVE_MINUTES   = 5;
+    private static final int DISK_CACHE_BYTES     = 2 * 1024 * 1024;  // Volley's own cache dir
+    private static final long HTTP_CACHE_BYTES    = 16L * 1024 * 1024; // ETag cache for catalog pages
+    private static final int TLS_SESSION_CACHE    = 32;
+    private static final int TLS_SESSION_TIMEOUT_S = 60 * 60;
+    private static final int BREAKER_FAILURES     = 5;                // consecutive outage signals
+    private static final long BREAKER_OPEN_MS     = 30_000L;          // first cool-down, doubles per failed probe
+    private static final long BREAKER_MAX_OPEN_MS = 5 * 60_000L;
+
+    // ---- Singleton ----
+    private static NetworkStack INSTANCE;
+    private static Transport selected = Transport.OKHTTP;
+    private static final Map<DataSource, CircuitBreaker> BREAKERS = new EnumMap<>(DataSource.class);
+    private static final SingleFlight FLIGHTS = new SingleFlight(); // keys include URL + auth headers
+
+    public static synchronized NetworkStack get(@NonNull Context ctx) {
+        if (INSTANCE == null) {
+            INSTANCE = new NetworkStack(ctx.getApplicationContext(), selected);
+        }
+        return INSTANCE;
+    }
+
+    /** Shortcut used by the repositories. */
+    @NonNull
+    public static HttpTransport transport(@NonNull Context ctx) {
+        return get(ctx).transport;
+    }
+
+    /**
+     * Transport for one provider: identical GETs coalesced, retries with backoff,
+     * fails fast while the provider's breaker is open.
+     */
+    @NonNull
+    public static HttpTransport transport(@NonNull Context ctx, @NonNull DataSource ds) {
+        return forProvider(ds, transport(ctx));
+    }
+
+    /** Wrap a provider-specific transport chain (e.g. Shopify's pacer) in the same layers. */
+    @NonNull
+    static HttpTransport forProvider(@NonNull DataSource ds, @NonNull HttpTransport inner) {
+        return FLIGHTS.over(new ResilientTransport(inner, breaker(ds)));
+    }
+
+    /** One breaker per provider for the life of the process. */
+    @NonNull
+    public static synchronized CircuitBreaker breaker(@NonNull DataSource ds) {
+        CircuitBreaker b = BREAKERS.get(ds);
+        if (b == null) {
+            b = new CircuitBreaker(ds.name(), BREAKER_FAILURES, BREAKER_OPEN_MS, BREAKER_MAX_OPEN_MS);
+            BREAKERS.put(ds, b);
+        }
+        return b;
+    }
+
+    /** Switch implementation; takes effect for the next stack (current one is shut down). */
+    public static synchronized void useTransport(@NonNull Transport t) {
+        if (t == selected) return;
+        selected = t;
+        shutdown();
+    }
+
+    /** Cancel everything in flight and release threads/connections. Next get() starts a fresh stack. */
+    public static synchronized void shutdown() {
+        ShopifyScheduler.reset();
+        if (INSTANCE == null) return;
+        try {
+            INSTANCE.transport.shutdown();
+        } catch (Throwable t) {
+            Logx.w(TAG, "shutdown failed: " + t);
+        }
+        INSTANCE = null;
+    }
+
+    private final HttpTransport transport;
+
+    private NetworkStack(Context app, Transport kind) {
+        HttpTransport base;
+        if (kind == Transport.VOLLEY) {
+            base = new VolleyTransport(volleyQueue(app));
+        } else {
+            base = new OkHttpTransport.Builder()
+                    .dispatcher(MAX_REQUESTS, MAX_REQUESTS_PER_HOST)
+                    .connectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES)
+                    .build();
+        }
+        transport = new ConditionalCache(base, httpCacheDir(app), HTTP_CACHE_BYTES, NetworkStack::isCatalogPage);
+    }
+
+    private static File httpCacheDir(Context app) {
+        return new File(app.getCacheDir(), "http-etag");
+    }
+
+    /** Catalog listing GETs worth revalidating: Shopify products, Clover items, EPOS stock pages. */
+    private static boolean isCatalogPage(HttpRequest r) {
+        String u = r.url;
+        return u.contains("/products.json") || u.contains("/items?") || u.contains("/inventory/stocks");
+    }
+
+    /** Drop the conditional-request cache (logout). Stop the stack first. */
+    public static void clearCache(@NonNull Context ctx) {
+        ConditionalCache.wipe(httpCacheDir(ctx.getApplicationContext()));
+    }
+
+    private static RequestQueue volleyQueue(Context app) {
+        // HttpURLConnection keep-alive pool is process-wide; make sure it's on and sized.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+
+        HurlStack stack = new HurlStack(null, sharedTlsFactory());
+        File cacheDir = new File(app.getCacheDir(), "volley");
+        RequestQueue q = new RequestQueue(
+                new DiskBasedCache(cacheDir, DISK_CACHE_BYTES),
+                new BasicNetwork(stack),
+                DISPATCHER_THREADS);
+        q.start();
+        return q;
+    }
+
+    /** One SSLContext for the whole process => one client session cache => TLS resumption. */
+    private static SSLSocketFactory sharedTlsFactory() {
+        try {
+            SSLContext tls = SSLContext.getInstance("TLS");
+            tls.init(null, null, null);
+            SSLSessionContext sessions = tls.getClientSessionContext();
+            if (sessions != null) {
+                sessions.setSessionCacheSize(TLS_SESSION_CACHE);
+                sessions.setSessionTimeout(TLS_SESSION_TIMEOUT_S);
+            }
+            return tls.getSocketFactory();
+        } catch (Exception e) {
+            Logx.w(TAG, "Falling back to default SSLSocketFactory: " + e);
+            return (SSLSocketFactory) SSLSocketFactory.getDefault();
+        }
+    }
+}
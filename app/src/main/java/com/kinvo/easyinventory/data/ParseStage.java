@@ -0,0 +1,130 @@
+package com.kinvo.easyinventory.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.data.http.HttpResponse;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Response parsing/mapping stage.
+ * Every provider response is decoded, mapped and filtered on a small dedicated background
+ * executor; only the final result (or error) is posted to the main thread.
+ * A {@link Listener} can be installed to measure how long each parse takes.
+ */
+public final class ParseStage {
+
+    private static final String TAG = "ParseStage";
+    private static final int THREADS = 2;
+
+    /** Timing hook, called on the parse thread after each stage (success or failure). */
+    public interface Listener {
+        void onParsed(@NonNull String stage, long elapsedNanos, int bytes, int items, boolean ok);
+    }
+
+    /** Unit of work executed off the main thread. */
+    public interface Work<T> {
+        T run() throws Exception;
+    }
+
+    /** Per-caller step over an already decoded value (filter, limit, caller state). */
+    public interface Step<D, T> {
+        T apply(D decoded) throws Exception;
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final ExecutorService EXEC = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+        @Override public Thread newThread(@NonNull Runnable r) {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "parse-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static volatile Listener listener = (stage, nanos, bytes, items, ok) ->
+            Logx.d(TAG, String.format(Locale.ROOT, "%s: %d items from %d bytes in %.1f ms%s",
+                    stage, items, bytes, nanos / 1_000_000d, ok ? "" : " (failed)"));
+
+    private ParseStage() {}
+
+    /** Replace the timing hook (null = no-op). */
+    public static void setListener(@Nullable Listener l) {
+        listener = l != null ? l : (stage, nanos, bytes, items, ok) -> {};
+    }
+
+    /**
+     * Decode/map {@code resp} on the parse executor, then deliver to {@code cb} on the main thread.
+     * A coalesced (shared) response is decoded once per stage and the result fanned out, so
+     * {@code work} must not depend on the caller; split per-caller filtering out with
+     * {@link #run(String, HttpResponse, Work, Step, InventoryRepository.Callback)}.
+     */
+    public static <T> void run(@NonNull String stage, @NonNull HttpResponse resp,
+                               @NonNull Work<T> work, @NonNull InventoryRepository.Callback<T> cb) {
+        if (resp.isShared()) run(stage, resp.body.length, () -> resp.decodeOnce(stage, work::run), cb);
+        else run(stage, resp.body.length, work, cb);
+    }
+
+    /**
+     * Like {@link #run(String, HttpResponse, Work, InventoryRepository.Callback)}, but only
+     * {@code decode} is shared by the joiners of a coalesced response; {@code step} runs for each.
+     */
+    public static <D, T> void run(@NonNull String stage, @NonNull HttpResponse resp, @NonNull Work<D> decode,
+                                  @NonNull Step<D, T> step, @NonNull InventoryRepository.Callback<T> cb) {
+        Work<D> d = resp.isShared() ? () -> resp.decodeOnce(stage, decode::run) : decode;
+        run(stage, resp.body.length, () -> step.apply(d.run()), cb);
+    }
+
+    public static <T> void run(@NonNull String stage, int bytes,
+                               @NonNull Work<T> work, @NonNull InventoryRepository.Callback<T> cb) {
+        EXEC.execute(() -> {
+            long t0 = System.nanoTime();
+            T result;
+            try {
+                result = work.run();
+            } catch (Throwable t) {
+                report(stage, t0, bytes, 0, false);
+                fail(cb, (t instanceof Exception) ? (Exception) t : new Exception(t));
+                return;
+            }
+            report(stage, t0, bytes, count(result), true);
+            deliver(cb, result);
+        });
+    }
+
+    /** Post a ready result to the main thread. */
+    public static <T> void deliver(@NonNull InventoryRepository.Callback<T> cb, T result) {
+        MAIN.post(() -> cb.onSuccess(result));
+    }
+
+    /** Post an error to the main thread. */
+    public static void fail(@NonNull InventoryRepository.Callback<?> cb, @NonNull Exception e) {
+        MAIN.post(() -> cb.onError(e));
+    }
+
+    private static void report(String stage, long t0, int bytes, int items, boolean ok) {
+        try {
+            listener.onParsed(stage, System.nanoTime() - t0, bytes, items, ok);
+        } catch (Throwable ignore) {}
+    }
+
+    private static int count(Object result) {
+        if (result == null) return 0;
+        if (result instanceof Collection) return ((Collection<?>) result).size();
+        return 1;
+    }
+}
@@ -10,6 +10,8 @@ import com.kinvo.easyinventory.SecurePrefs;
  * Chooses a concrete repository based on saved provider in SecurePrefs.
  * Repositories are created with NO constructor args; per-call Context is passed
  * via the InventoryRepository method signatures.
+ * {@link #get} wraps the provider in the local {@link CatalogRepository} mirror;
+ * {@link #getRemote} returns the bare provider repository.
  */
 public final class ProviderFactory {
 
@@ -17,18 +19,33 @@ public final class ProviderFactory {
 
     @NonNull
     public static InventoryRepository get(@NonNull Context ctx) {
+        return new CatalogRepository(source(ctx), getRemote(ctx));
+    }
+
+    @NonNull
+    public static InventoryRepository getRemote(@NonNull Context ctx) {
+        switch (source(ctx)) {
+            case SHOPIFY:
+                return new ShopifyRepository();   // no Context in ctor
+            case CLOVER:
+                return new CloverRepository();    // no Context in ctor
+            case EPOSNOW:
+            default:
+                return new EposNowRepository();   // no Context in ctor
+        }
+    }
+
+    @NonNull
+    static DataSource source(@NonNull Context ctx) {
         SecurePrefs prefs = SecurePrefs.get(ctx);
         String provider = String.valueOf(prefs.getProvider()); // e.g., "eposnow", "shopify", "clover"
         if (provider == null) provider = "eposnow";
 
         switch (provider.toLowerCase()) {
-            case "shopify":
-                return new ShopifyRepository();   // no Context in ctor
-            case "clover":
-                return new CloverRepository();    // no Context in ctor
+            case "shopify": return DataSource.SHOPIFY;
+            case "clover":  return DataSource.CLOVER;
             case "eposnow":
-            default:
-                return new EposNowRepository();   // no Context in ctor
+            default:        return DataSource.EPOSNOW;
         }
     }
 }
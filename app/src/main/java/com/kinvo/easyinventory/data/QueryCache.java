@@ -0,0 +1,89 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.SearchText;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stale-while-revalidate cache of recent search results, keyed by provider + location + query.
+ * - younger than {@link #FRESH_MS}: served as-is, no network.
+ * - younger than {@link #STALE_MS}: served immediately, caller revalidates in the background.
+ * - older: dropped.
+ * Bounded LRU of {@link #MAX_ENTRIES} queries. Product objects are shared with the screen,
+ * so in-place stock edits show up in the cached copy too. Thread-safe.
+ */
+public final class QueryCache {
+
+    private static final long FRESH_MS = 15_000L;
+    private static final long STALE_MS = 10 * 60_000L;
+    private static final int MAX_ENTRIES = 24;
+
+    private static QueryCache INSTANCE;
+
+    public static synchronized QueryCache get() {
+        if (INSTANCE == null) INSTANCE = new QueryCache();
+        return INSTANCE;
+    }
+
+    /** A cached result; {@code fresh} = no revalidation needed. */
+    public static final class Hit {
+        @NonNull public final List<Product> products;
+        public final boolean fresh;
+
+        Hit(@NonNull List<Product> products, boolean fresh) {
+            this.products = products;
+            this.fresh = fresh;
+        }
+    }
+
+    private static final class Cached {
+        final List<Product> products;
+        final long storedAt;
+
+        Cached(List<Product> products, long storedAt) {
+            this.products = products;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<String, Cached>(32, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private QueryCache() {}
+
+    @NonNull
+    public static String key(@Nullable DataSource ds, int locationId, @Nullable String query) {
+        return ds + ":" + locationId + ":" + SearchText.normalize(query).trim();
+    }
+
+    @Nullable
+    public synchronized Hit lookup(@NonNull String key) {
+        Cached e = entries.get(key);
+        if (e == null) return null;
+        long age = System.currentTimeMillis() - e.storedAt;
+        if (age > STALE_MS) { entries.remove(key); return null; }
+        return new Hit(new ArrayList<>(e.products), age <= FRESH_MS);
+    }
+
+    public synchronized void put(@NonNull String key, @Nullable List<Product> products) {
+        List<Product> copy = products == null
+                ? Collections.<Product>emptyList() : Collections.unmodifiableList(new ArrayList<>(products));
+        entries.put(key, new Cached(copy, System.currentTimeMillis()));
+    }
+
+    /** Forget everything (logout, provider switch). */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
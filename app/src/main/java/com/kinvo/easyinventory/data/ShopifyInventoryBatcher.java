@@ -0,0 +1,247 @@
+package com.kinvo.easyinventory.data;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-shop batching of absolute stock sets, so replaying a long stock count costs a few requests
+ * instead of one per line: sets are gathered into one inventorySetQuantities mutation
+ * (quantities[]). Stock is only ever set absolutely ({@link ShopifyRepository#setStock}), so there
+ * is no inventoryAdjustQuantities (delta) lane: a delta would need a read first and could not be
+ * compared. ignoreCompareQuantity applies to the whole mutation, so compare-and-set entries
+ * and unconditional ones go in separate batches. A later set of the same item + location replaces
+ * the queued value but keeps its compareQuantity (the queued one never reached Shopify).
+ * A batch is sent {@link #WINDOW_MS} after its first entry, or at once when it reaches its cap.
+ * userErrors point at entries by index (field = ["input","quantities","3",...]) and fail only the
+ * callers of that entry, COMPARE_QUANTITY_STALE as a {@link StockConflictException}. The mutation
+ * is all-or-nothing, so the untouched rest of a rejected batch is sent again once on its own.
+ * Callbacks run on main.
+ */
+final class ShopifyInventoryBatcher {
+
+    private static final String TAG = "ShopifyBatcher";
+
+    private static final long WINDOW_MS = 250L;
+    private static final int MAX_QUANTITIES = 100;  // quantities per mutation
+
+    /** Does the actual HTTP for one batch (implemented by {@link ShopifyRepository}). */
+    interface Sender {
+        /** cb gets the mutation's userErrors (empty = every quantity applied). */
+        void set(@NonNull JSONArray quantities, boolean compare, @NonNull InventoryRepository.Callback<JSONArray> cb);
+    }
+
+    private static final Map<String, ShopifyInventoryBatcher> SHOPS = new HashMap<>();
+
+    static synchronized ShopifyInventoryBatcher forShop(@NonNull String shop) {
+        ShopifyInventoryBatcher b = SHOPS.get(shop);
+        if (b == null) {
+            b = new ShopifyInventoryBatcher();
+            SHOPS.put(shop, b);
+        }
+        return b;
+    }
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    // Guarded by this.
+    private Map<String, Entry> compared = new LinkedHashMap<>();
+    private Map<String, Entry> unconditional = new LinkedHashMap<>();
+    private Sender sender; // latest; every caller of one shop uses the same credentials
+    private boolean flushQueued;
+
+    private ShopifyInventoryBatcher() {}
+
+    private static final class Entry {
+        final long itemId;
+        final long locationId;
+        int quantity;
+        @Nullable final Integer compareQuantity;
+        final List<InventoryRepository.Callback<Boolean>> callers = new ArrayList<>();
+
+        Entry(long itemId, long locationId, @Nullable Integer compareQuantity) {
+            this.itemId = itemId;
+            this.locationId = locationId;
+            this.compareQuantity = compareQuantity;
+        }
+    }
+
+    // ============================================================================================
+    // API
+    // ============================================================================================
+
+    /** Queue "available of item @ location is {@code quantity}", only if it is {@code expected} (null = always). */
+    void set(@NonNull Sender s, long itemId, long locationId, int quantity, @Nullable Integer expected,
+             @NonNull InventoryRepository.Callback<Boolean> cb) {
+        boolean now;
+        synchronized (this) {
+            sender = s;
+            Map<String, Entry> lane = expected != null ? compared : unconditional;
+            String k = itemId + "@" + locationId;
+            Entry e = lane.get(k);
+            if (e == null) { e = new Entry(itemId, locationId, expected); lane.put(k, e); }
+            e.quantity = quantity;
+            e.callers.add(cb);
+            now = lane.size() >= MAX_QUANTITIES;
+        }
+        schedule(now);
+    }
+
+    // ============================================================================================
+    // Flushing
+    // ============================================================================================
+
+    private void schedule(boolean now) {
+        synchronized (this) {
+            if (!now && flushQueued) return;
+            flushQueued = true;
+        }
+        main.removeCallbacks(flush);
+        if (now) main.post(flush);
+        else main.postDelayed(flush, WINDOW_MS);
+    }
+
+    private final Runnable flush = () -> {
+        Map<String, Entry> cas, plain;
+        Sender s;
+        synchronized (this) {
+            flushQueued = false;
+            cas = compared;
+            plain = unconditional;
+            s = sender;
+            compared = new LinkedHashMap<>();
+            unconditional = new LinkedHashMap<>();
+        }
+        if (s == null) return;
+        sendAll(s, new ArrayList<>(cas.values()), true);
+        sendAll(s, new ArrayList<>(plain.values()), false);
+    };
+
+    private void sendAll(Sender s, List<Entry> all, boolean compare) {
+        for (int i = 0; i < all.size(); i += MAX_QUANTITIES) {
+            send(s, new ArrayList<>(all.subList(i, Math.min(all.size(), i + MAX_QUANTITIES))), compare, true);
+        }
+    }
+
+    private void send(Sender s, List<Entry> batch, boolean compare, boolean mayResend) {
+        JSONArray arr = new JSONArray();
+        try {
+            for (Entry e : batch) {
+                JSONObject o = new JSONObject();
+                o.put("inventoryItemId", "gid://shopify/InventoryItem/" + e.itemId);
+                o.put("locationId", "gid://shopify/Location/" + e.locationId);
+                o.put("quantity", e.quantity);
+                if (compare) o.put("compareQuantity", e.compareQuantity);
+                arr.put(o);
+            }
+        } catch (Exception e) {
+            failAll(batch, e);
+            return;
+        }
+        s.set(arr, compare, new InventoryRepository.Callback<JSONArray>() {
+            @Override public void onSuccess(JSONArray userErrors) {
+                if (userErrors == null || userErrors.length() == 0) {
+                    for (Entry e : batch) for (InventoryRepository.Callback<Boolean> cb : e.callers) cb.onSuccess(true);
+                    return;
+                }
+                settleErrors(s, batch, compare, userErrors, mayResend);
+            }
+            @Override public void onError(Exception e) { failAll(batch, e); }
+        });
+    }
+
+    /** Fail the entries the errors point at; resend the rest (not applied: the mutation is atomic). */
+    private void settleErrors(Sender s, List<Entry> batch, boolean compare, JSONArray userErrors, boolean mayResend) {
+        Rejection rej = Rejection.of(userErrors, batch.size());
+        if (rej.byIndex.isEmpty()) {
+            failAll(batch, rej.general != null ? rej.general : error("rejected", false));
+            return;
+        }
+        List<Entry> rest = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Exception e = rej.byIndex.get(i);
+            if (e == null) { rest.add(batch.get(i)); continue; }
+            for (InventoryRepository.Callback<Boolean> cb : batch.get(i).callers) cb.onError(e);
+        }
+        if (rest.isEmpty()) return;
+        if (!mayResend) {
+            failAll(rest, rej.general != null ? rej.general : error("rejected with its batch", false));
+            return;
+        }
+        Logx.w(TAG, rej.byIndex.size() + " of " + batch.size() + " quantities rejected; resending " + rest.size());
+        send(s, rest, compare, false);
+    }
+
+    /**
+     * userErrors of one mutation sorted out: per quantity index the error of that entry (messages
+     * joined, a {@link StockConflictException} if any of them is COMPARE_QUANTITY_STALE), and the
+     * errors that point at no entry of the batch as one {@code general} (null = none).
+     */
+    static final class Rejection {
+        final Map<Integer, Exception> byIndex = new HashMap<>();
+        @Nullable Exception general;
+
+        static Rejection of(@NonNull JSONArray userErrors, int batchSize) {
+            Map<Integer, String> msgs = new HashMap<>();
+            Set<Integer> staleAt = new HashSet<>();
+            StringBuilder general = new StringBuilder();
+            boolean staleGeneral = false;
+            for (int i = 0; i < userErrors.length(); i++) {
+                JSONObject ue = userErrors.optJSONObject(i);
+                if (ue == null) continue;
+                String msg = ue.optString("message", "error");
+                boolean stale = "COMPARE_QUANTITY_STALE".equals(ue.optString("code"));
+                Integer idx = quantityIndex(ue.optJSONArray("field"));
+                if (idx != null && idx >= 0 && idx < batchSize) {
+                    String prev = msgs.get(idx);
+                    msgs.put(idx, prev == null ? msg : prev + "; " + msg);
+                    if (stale) staleAt.add(idx);
+                } else {
+                    if (general.length() > 0) general.append("; ");
+                    general.append(msg);
+                    staleGeneral |= stale;
+                }
+            }
+            Rejection r = new Rejection();
+            for (Map.Entry<Integer, String> m : msgs.entrySet()) {
+                r.byIndex.put(m.getKey(), error(m.getValue(), staleAt.contains(m.getKey())));
+            }
+            if (general.length() > 0) r.general = error(general.toString(), staleGeneral);
+            return r;
+        }
+    }
+
+    private static Exception error(String msg, boolean stale) {
+        return stale ? new StockConflictException(msg) : new IllegalStateException("GraphQL userErrors: " + msg);
+    }
+
+    /** ["input","quantities","3","compareQuantity"] -> 3. */
+    @Nullable
+    private static Integer quantityIndex(@Nullable JSONArray field) {
+        if (field == null) return null;
+        for (int i = 0; i + 1 < field.length(); i++) {
+            if (!"quantities".equals(field.optString(i))) continue;
+            try { return Integer.parseInt(field.optString(i + 1)); } catch (NumberFormatException e) { return null; }
+        }
+        return null;
+    }
+
+    private static void failAll(List<Entry> batch, Exception e) {
+        for (Entry en : batch) for (InventoryRepository.Callback<Boolean> cb : en.callers) cb.onError(e);
+    }
+}
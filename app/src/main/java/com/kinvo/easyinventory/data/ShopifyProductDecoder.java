@@ -0,0 +1,139 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kinvo.easyinventory.model.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Streaming decoder for Shopify REST /products.json.
+ * Goes from response bytes straight to one Product per variant; body_html, images, options
+ * and every other field we never read are skipped without being materialized.
+ */
+final class ShopifyProductDecoder {
+
+    private ShopifyProductDecoder() {}
+
+    /**
+     * @param filter optional predicate; only accepted products are kept
+     * @param limit  stop after this many accepted products (<= 0 = no limit)
+     */
+    static List<Product> decode(byte[] body, @Nullable Predicate<Product> filter, int limit) throws IOException {
+        List<Product> out = new ArrayList<>();
+        try (JsonReader r = JsonStreams.open(body)) {
+            if (!JsonStreams.enterRootArray(r, "products")) return out;
+            while (r.hasNext()) {
+                readProduct(r, filter, out);
+                if (limit > 0 && out.size() >= limit) break; // rest of the page is never parsed
+            }
+        }
+        return out;
+    }
+
+    private static void readProduct(JsonReader r, @Nullable Predicate<Product> filter, List<Product> out)
+            throws IOException {
+        String title = "";
+        long updatedAt = 0L;
+        List<Product> variants = null;
+
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "title": {
+                    String t = JsonStreams.string(r);
+                    title = t == null ? "" : t;
+                    break;
+                }
+                case "variants":
+                    variants = readVariants(r);
+                    break;
+                case "updated_at":
+                    updatedAt = JsonStreams.isoMillis(JsonStreams.string(r));
+                    break;
+                default:
+                    r.skipValue();
+            }
+        }
+        r.endObject();
+
+        if (variants == null || variants.isEmpty()) {
+            Product p = new Product();
+            p.setDescription(title);
+            p.setCurrentStock(0d);
+            p.setProvider("SHOPIFY");
+            if (updatedAt > 0) p.setUpdatedAtMs(updatedAt);
+            p.buildSearchKey();
+            if (filter == null || filter.test(p)) out.add(p);
+            return;
+        }
+
+        // Variant title is only known per variant; product title may arrive after "variants".
+        for (Product p : variants) {
+            String vTitle = p.getDescription();
+            p.setDescription(!"Default Title".equalsIgnoreCase(vTitle) && vTitle != null && !vTitle.isEmpty()
+                    ? title + " — " + vTitle : title);
+            p.buildSearchKey();
+            // Changed-at = newest of product and variant (either one bumps with a stock change).
+            long v = p.getUpdatedAtMs() != null ? p.getUpdatedAtMs() : 0L;
+            if (Math.max(v, updatedAt) > 0) p.setUpdatedAtMs(Math.max(v, updatedAt));
+            if (filter == null || filter.test(p)) out.add(p);
+        }
+    }
+
+    private static List<Product> readVariants(JsonReader r) throws IOException {
+        List<Product> list = new ArrayList<>();
+        if (r.peek() != JsonToken.BEGIN_ARRAY) { r.skipValue(); return list; }
+        r.beginArray();
+        while (r.hasNext()) {
+            Product p = new Product();
+            p.setProvider("SHOPIFY");
+            p.setSku("");
+            p.setBarcode("");
+            p.setCurrentStock(0d);
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "id": {
+                        long id = JsonStreams.lng(r, 0L);
+                        if (id > 0) p.setVariantId(id);
+                        break;
+                    }
+                    case "title":              p.setDescription(JsonStreams.string(r)); break; // variant title for now
+                    case "sku":                p.setSku(nz(JsonStreams.string(r))); break;
+                    case "barcode":            p.setBarcode(nz(JsonStreams.string(r))); break;
+                    case "price":              p.setPriceBig(price(JsonStreams.string(r))); break;
+                    case "inventory_quantity": p.setCurrentStock(JsonStreams.dbl(r, 0d)); break;
+                    case "updated_at": {
+                        long t = JsonStreams.isoMillis(JsonStreams.string(r));
+                        if (t > 0) p.setUpdatedAtMs(t);
+                        break;
+                    }
+                    case "inventory_item_id": {
+                        long id = JsonStreams.lng(r, 0L);
+                        if (id > 0) p.setInventoryItemId(id);
+                        break;
+                    }
+                    default: r.skipValue();
+                }
+            }
+            r.endObject();
+            list.add(p);
+        }
+        r.endArray();
+        return list;
+    }
+
+    private static BigDecimal price(@Nullable String s) {
+        try { return new BigDecimal(s == null ? "0" : s); }
+        catch (Exception ignored) { return BigDecimal.ZERO; }
+    }
+
+    private static String nz(@Nullable String s) { return s == null ? "" : s; }
+}
@@ -7,40 +7,56 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.VolleyError;
 import com.kinvo.easyinventory.SecurePrefs;
+import com.kinvo.easyinventory.data.http.CallGroup;
+import com.kinvo.easyinventory.data.http.HttpException;
+import com.kinvo.easyinventory.data.http.HttpRequest;
+import com.kinvo.easyinventory.data.http.HttpResponse;
+import com.kinvo.easyinventory.data.http.HttpTransport;
 import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.FuzzyMatch;
+import com.kinvo.easyinventory.util.SearchText;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Shopify Admin API repository (REST + GraphQL).
- * - Searches via REST /products.json (client-side filter)
- * - Updates inventory via GraphQL inventoryAdjustQuantities (delta)
- *   with fallback to REST /inventory_levels/set.json (absolute).
+ * - Searches server-side via GraphQL productVariants(query: ...), falling back to REST /products.json
+ *   (client-side filter) following page_info cursors with prefetch
+ * - Sets inventory via GraphQL inventorySetQuantities (absolute, optional compare-and-set), with
+ *   sets made close together batched into one call; fallback to REST /inventory_levels/set.json.
  * - Auto-resolves and caches LONG location_id on first use.
+ * - All calls go through a per-shop {@link ShopifyScheduler} that paces them under the rate limits.
  */
 public class ShopifyRepository implements InventoryRepository {
 
     private static final String TAG = "ShopifyRepository";
     private static final String REST_VER = "2023-10";  // keep stable for product list + inventory_levels
     private static final String GQL_VER  = "2025-10";  // matches your curl example
-
-    private RequestQueue queue(Context ctx) {
-        return Volley.newRequestQueue(ctx.getApplicationContext());
+    private static final String JSON     = "application/json; charset=utf-8";
+    private static final int PAGE_SIZE   = 250;                // REST max per page
+
+    /** Calls of typed searches (all instances); cancelled when the user types past them. */
+    private static final CallGroup SEARCHES = new CallGroup();
+
+    /**
+     * Shared transport, paced per shop against Shopify's REST bucket and GraphQL cost budget.
+     * Backoff/breaker sit outside the pacer so their retries are paced too.
+     */
+    private HttpTransport transport(Context ctx) {
+        String shop = normalizeDomain(safe(SecurePrefs.get(ctx).getShopDomain()));
+        return NetworkStack.forProvider(DataSource.SHOPIFY,
+                ShopifyScheduler.forShop(shop).over(NetworkStack.transport(ctx)));
     }
 
     private boolean hasCreds(Context ctx) {
@@ -80,16 +96,14 @@ public class ShopifyRepository implements InventoryRepository {
 
     private static String safe(String s) { return s == null ? "" : s; }
 
-    private static String verboseVolleyError(com.android.volley.VolleyError e) {
-        NetworkResponse nr = e.networkResponse;
-        if (nr == null) return e.toString();
-        String body;
-        try { body = new String(nr.data, StandardCharsets.UTF_8); } catch (Exception ex) { body = "(unreadable)"; }
-        String hint = (nr.statusCode == 401)
+    private static String verboseError(Exception e) {
+        if (!(e instanceof HttpException)) return e.toString();
+        HttpResponse r = ((HttpException) e).response;
+        String hint = (r.code == 401)
                 ? " (401 Unauthorized – check domain/token/scopes: read_products, read_locations, read_inventory, write_inventory)"
                 : "";
-        Log.e(TAG, "Volley error " + nr.statusCode + ": " + body);
-        return e.toString() + " status=" + nr.statusCode + " body=" + body + hint;
+        Log.e(TAG, "HTTP error " + r.code + ": " + r.bodyString());
+        return e.toString() + hint;
     }
 
     // ============================================================================================
@@ -103,24 +117,32 @@ public class ShopifyRepository implements InventoryRepository {
             return;
         }
         SecurePrefs prefs = SecurePrefs.get(ctx);
-        String url = baseRest(prefs) + "/products.json?limit=" + Math.max(1, Math.min(250, limit <= 0 ? 250 : limit));
-
         final String needle = (query == null ? "" : query.trim().toLowerCase(Locale.ROOT));
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET, url, null,
-                resp -> {
-                    try {
-                        JSONArray products = resp.optJSONArray("products");
-                        List<Product> out = mapProducts(products, needle);
-                        cb.onSuccess(out);
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(12000, 1, 1.0f));
-        queue(ctx).add(req);
+        if (needle.isEmpty()) { // full listing (catalog seed): REST pages, not cancellable
+            searchRest(transport(ctx), ctx, prefs, needle, limit, cb);
+            return;
+        }
+        HttpTransport http = SEARCHES.over(transport(ctx));
+        String q = textQuery(needle);
+        if (q == null) { searchRest(http, ctx, prefs, needle, limit, cb); return; }
+        searchVariants(http, ctx, prefs, q, limit, new Callback<List<Product>>() {
+            @Override public void onSuccess(List<Product> result) { cb.onSuccess(result); }
+            @Override public void onError(Exception e) {
+                Log.w(TAG, "GraphQL search failed, falling back to REST: " + e);
+                searchRest(http, ctx, prefs, needle, limit, cb);
+            }
+        });
+    }
+
+    @Override
+    public void cancelPendingSearches() {
+        SEARCHES.cancelAll();
+    }
+
+    private void searchRest(HttpTransport http, Context ctx, SecurePrefs prefs, String needle, int limit,
+                            Callback<List<Product>> cb) {
+        new PageScan(http, prefs, "shopify.search", matcher(needle), limit, cb)
+                .start(baseRest(prefs) + "/products.json?limit=" + PAGE_SIZE);
     }
 
     @Override
@@ -129,95 +151,81 @@ public class ShopifyRepository implements InventoryRepository {
         if (TextUtils.isEmpty(barcode)) { cb.onSuccess(null); return; }
 
         SecurePrefs prefs = SecurePrefs.get(ctx);
-        String url = baseRest(prefs) + "/products.json?limit=250";
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET, url, null,
-                resp -> {
-                    try {
-                        JSONArray products = resp.optJSONArray("products");
-                        if (products == null) { cb.onSuccess(null); return; }
-                        String needle = barcode.trim();
-                        for (int i = 0; i < products.length(); i++) {
-                            JSONObject pr = products.optJSONObject(i);
-                            if (pr == null) continue;
-                            JSONArray vars = pr.optJSONArray("variants");
-                            if (vars == null) continue;
-                            for (int v = 0; v < vars.length(); v++) {
-                                JSONObject var = vars.optJSONObject(v);
-                                if (var == null) continue;
-                                String bc = var.optString("barcode", "");
-                                if (needle.equalsIgnoreCase(bc)) {
-                                    Product p = mapOne(pr, var);
-                                    cb.onSuccess(p); return;
-                                }
-                            }
-                        }
-                        cb.onSuccess(null);
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(12000, 1, 1.0f));
-        queue(ctx).add(req);
+        String needle = barcode.trim();
+        String quoted = "\"" + needle.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        searchVariants(transport(ctx), ctx, prefs, "barcode:" + quoted + " OR sku:" + quoted, 5, new Callback<List<Product>>() {
+            @Override public void onSuccess(List<Product> hits) {
+                Product bySku = null;
+                for (Product p : hits) {
+                    if (needle.equalsIgnoreCase(p.getBarcode())) { cb.onSuccess(p); return; }
+                    if (bySku == null && needle.equalsIgnoreCase(p.getSku())) bySku = p;
+                }
+                cb.onSuccess(bySku);
+            }
+            @Override public void onError(Exception e) {
+                Log.w(TAG, "GraphQL barcode lookup failed, falling back to REST: " + e);
+                barcodeRest(ctx, prefs, needle, cb);
+            }
+        });
+    }
+
+    private void barcodeRest(Context ctx, SecurePrefs prefs, String needle, Callback<Product> cb) {
+        new PageScan(transport(ctx), prefs, "shopify.barcode", p -> needle.equalsIgnoreCase(p.getBarcode()), 1,
+                new Callback<List<Product>>() {
+                    @Override public void onSuccess(List<Product> hit) { cb.onSuccess(hit.isEmpty() ? null : hit.get(0)); }
+                    @Override public void onError(Exception e) { cb.onError(e); }
+                })
+                .start(baseRest(prefs) + "/products.json?limit=" + PAGE_SIZE);
     }
 
     @Override
     public void updateStock(Context ctx, long inventoryItemId, int locationIdParam, double newQty, Callback<Product> cb) {
-        if (!hasCreds(ctx)) { cb.onError(new IllegalStateException("Missing Shopify credentials.")); return; }
-        SecurePrefs prefs = SecurePrefs.get(ctx);
+        updateStock(ctx, inventoryItemId, locationIdParam, newQty, null, cb);
+    }
 
-        if (inventoryItemId <= 0) {
-            cb.onError(new IllegalArgumentException("Missing inventory_item_id for this variant."));
-            return;
-        }
+    /**
+     * One inventorySetQuantities call, compare-and-set against {@code expectedQty}. REST set.json
+     * only if GraphQL itself is unavailable (I/O, 5xx) and the set is unconditional: REST cannot
+     * compare, and userErrors or a conflict are answers, not outages.
+     */
+    @Override
+    public void updateStock(Context ctx, long inventoryItemId, int locationIdParam, double newQty,
+                            @Nullable Double expectedQty, Callback<Product> cb) {
+        setStock(ctx, inventoryItemId, newQty, expectedQty, new Callback<Product>() {
+            @Override public void onSuccess(Product res) { cb.onSuccess(res); }
+            @Override public void onError(Exception gqlErr) {
+                if (expectedQty != null || !unavailable(gqlErr)) { cb.onError(gqlErr); return; }
+                long locId = SecurePrefs.get(ctx).getShopifyLocationId();
+                if (locId <= 0 || inventoryItemId <= 0) { cb.onError(gqlErr); return; }
+                int desired = (int) Math.round(newQty);
+                doSetInventoryREST(ctx, SecurePrefs.get(ctx), inventoryItemId, locId, desired, new Callback<Boolean>() {
+                    @Override public void onSuccess(Boolean ok) {
+                        Product res = new Product();
+                        res.setDescription("Inventory updated (REST fallback)");
+                        res.setCurrentStock(newQty);
+                        cb.onSuccess(res);
+                    }
+                    @Override public void onError(Exception restErr) { cb.onError(gqlErr); }
+                });
+            }
+        });
+    }
 
-        // 1) Ensure we have a LONG location id.
+    /**
+     * Set available to {@code newQty} with inventorySetQuantities (the location id is cached after
+     * the first lookup); sets made within a short window share one call. With {@code expectedQty} it is a compare-and-set: Shopify
+     * applies it only if available still equals {@code expectedQty}, otherwise {@code cb} gets a
+     * {@link StockConflictException} and nothing changes. null = unconditional set.
+     */
+    public void setStock(@NonNull Context ctx, long inventoryItemId, double newQty, @Nullable Double expectedQty,
+                         @NonNull Callback<Product> cb) {
+        if (!hasCreds(ctx)) { cb.onError(new IllegalStateException("Missing Shopify credentials.")); return; }
+        if (inventoryItemId <= 0) { cb.onError(new IllegalArgumentException("Missing inventory_item_id for this variant.")); return; }
+        SecurePrefs prefs = SecurePrefs.get(ctx);
         ensureLocationId(ctx, new Callback<Long>() {
             @Override public void onSuccess(Long locId) {
-                if (locId == null || locId <= 0) {
-                    cb.onError(new IllegalStateException("No Shopify locations found."));
-                    return;
-                }
-                // 2) Read current inventory to compute delta (GraphQL needs delta).
-                getCurrentAvailable(ctx, prefs, inventoryItemId, locId, new Callback<Integer>() {
-                    @Override public void onSuccess(Integer currentAvail) {
-                        int desired = (int) Math.round(newQty);
-                        int delta   = desired - (currentAvail == null ? 0 : currentAvail);
-                        if (delta == 0) {
-                            Product ok = new Product();
-                            ok.setDescription("No change");
-                            ok.setCurrentStock(newQty);
-                            cb.onSuccess(ok);
-                            return;
-                        }
-                        // 3) Try GraphQL adjust (delta). Fallback to REST set if userErrors.
-                        doAdjustInventoryGraphQL(ctx, prefs, inventoryItemId, locId, delta, new Callback<Boolean>() {
-                            @Override public void onSuccess(Boolean ok) {
-                                Product res = new Product();
-                                res.setDescription("Inventory updated");
-                                res.setCurrentStock(newQty);
-                                cb.onSuccess(res);
-                            }
-                            @Override public void onError(Exception gqlErr) {
-                                // Fallback: absolute set via REST
-                                doSetInventoryREST(ctx, prefs, inventoryItemId, locId, desired, new Callback<Boolean>() {
-                                    @Override public void onSuccess(Boolean ok) {
-                                        Product res = new Product();
-                                        res.setDescription("Inventory updated (REST fallback)");
-                                        res.setCurrentStock(newQty);
-                                        cb.onSuccess(res);
-                                    }
-                                    @Override public void onError(Exception restErr) {
-                                        cb.onError(gqlErr != null ? gqlErr : restErr);
-                                    }
-                                });
-                            }
-                        });
-                    }
-                    @Override public void onError(Exception e) { cb.onError(e); }
-                });
+                if (locId == null || locId <= 0) { cb.onError(new IllegalStateException("No Shopify locations found.")); return; }
+                doSetInventoryGraphQL(ctx, prefs, inventoryItemId, locId, newQty, expectedQty, cb);
             }
             @Override public void onError(Exception e) { cb.onError(e); }
         });
@@ -227,24 +235,202 @@ public class ShopifyRepository implements InventoryRepository {
     public void fetchRecentUpdates(Context ctx, int locationId, long sinceEpochMs, int limit, Callback<List<Product>> cb) {
         if (!hasCreds(ctx)) { cb.onError(new IllegalStateException("Missing Shopify credentials.")); return; }
         SecurePrefs prefs = SecurePrefs.get(ctx);
-        String url = baseRest(prefs) + "/products.json?limit=" + Math.max(1, Math.min(250, limit <= 0 ? 250 : limit))
-                + "&updated_at_min=" + ISO8601.formatUtc(sinceEpochMs);
-
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET, url, null,
-                resp -> {
-                    try {
-                        JSONArray products = resp.optJSONArray("products");
-                        List<Product> out = mapProducts(products, "");
-                        cb.onSuccess(out);
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(12000, 1, 1.0f));
-        queue(ctx).add(req);
+        new PageScan(transport(ctx), prefs, "shopify.updates", null, limit, cb)
+                .start(baseRest(prefs) + "/products.json?limit=" + PAGE_SIZE
+                        + "&updated_at_min=" + ISO8601.formatUtc(sinceEpochMs));
+    }
+
+    // ============================================================================================
+    // GraphQL variant search: only matching variants, minimal fields, cursor pages
+    // ============================================================================================
+
+    private static final String VARIANT_SEARCH =
+            "query variantSearch($q: String!, $first: Int!, $after: String) {"
+                    + "  productVariants(first: $first, after: $after, query: $q) {"
+                    + "    edges { node { id title sku barcode price inventoryQuantity updatedAt"
+                    + "      inventoryItem { id } product { title } } }"
+                    + "    pageInfo { hasNextPage endCursor }"
+                    + "  }"
+                    + "}";
+
+    /**
+     * Shopify search syntax for a free-text term: prefix match on the default fields, sku and barcode.
+     * Characters the search grammar treats specially are dropped; null if nothing searchable remains.
+     */
+    @Nullable
+    private static String textQuery(String needle) {
+        List<String> terms = new ArrayList<>();
+        for (String t : needle.split("\\s+")) {
+            String clean = t.replaceAll("[^\\p{L}\\p{N}._-]", "");
+            if (!clean.isEmpty()) terms.add(clean + "*");
+        }
+        if (terms.isEmpty()) return null;
+        if (terms.size() > 1) return TextUtils.join(" ", terms); // words: AND over the default fields
+        String t = terms.get(0);
+        return t + " OR sku:" + t + " OR barcode:" + t;
+    }
+
+    private void searchVariants(HttpTransport http, Context ctx, SecurePrefs prefs, String q, int limit,
+                                Callback<List<Product>> cb) {
+        fetchVariants(http, ctx, prefs, q, null, limit, new ArrayList<>(), cb);
+    }
+
+    private void fetchVariants(HttpTransport http, Context ctx, SecurePrefs prefs, String q, @Nullable String after,
+                               int limit, List<Product> acc, Callback<List<Product>> cb) {
+        int first = Math.max(1, Math.min(PAGE_SIZE, limit > 0 ? limit - acc.size() : PAGE_SIZE));
+        JSONObject body = new JSONObject();
+        try {
+            JSONObject vars = new JSONObject();
+            vars.put("q", q);
+            vars.put("first", first);
+            if (after != null) vars.put("after", after);
+            body.put("query", VARIANT_SEARCH);
+            body.put("variables", vars);
+        } catch (Exception e) { cb.onError(e); return; }
+
+        HttpRequest req = HttpRequest.post(baseGraphQL(prefs), body.toString(), JSON)
+                .headers(headers(prefs)).timeoutMs(12000);
+        http.enqueue(req,
+                resp -> ParseStage.run("shopify.variants", resp, () -> ShopifyVariantDecoder.decode(resp.body),
+                        new Callback<ShopifyVariantDecoder.Page>() {
+                            @Override public void onSuccess(ShopifyVariantDecoder.Page page) {
+                                acc.addAll(page.products);
+                                if (!page.products.isEmpty()) PagedCallback.emit(cb, page.products);
+                                boolean more = page.hasNextPage && page.endCursor != null;
+                                if (more && (limit <= 0 || acc.size() < limit)) {
+                                    fetchVariants(http, ctx, prefs, q, page.endCursor, limit, acc, cb);
+                                } else {
+                                    cb.onSuccess(limit > 0 && acc.size() > limit ? new ArrayList<>(acc.subList(0, limit)) : acc);
+                                }
+                            }
+                            @Override public void onError(Exception e) { cb.onError(e); }
+                        }),
+                err -> ParseStage.fail(cb, new RuntimeException(verboseError(err))));
+    }
+
+    // ============================================================================================
+    // Cursor pagination over /products.json
+    // ============================================================================================
+
+    /**
+     * Walks Link rel="next" (page_info) pages. While page N is being decoded/filtered on the parse
+     * executor, page N+1 is already on the wire. Stops as soon as {@code limit} matches are found
+     * (limit <= 0 = read everything) and cancels the prefetch it no longer needs.
+     * Every page's matches are also streamed to a {@link PagedCallback}.
+     */
+    private final class PageScan {
+        private final HttpTransport http;
+        private final SecurePrefs prefs;
+        private final String stage;
+        @Nullable private final Predicate<Product> filter;
+        private final int limit;
+        private final Callback<List<Product>> cb;
+        private final List<Product> acc = new ArrayList<>();
+
+        // Guarded by this: hand-off between the network thread and the consumer.
+        private HttpTransport.Call inflight;
+        private HttpResponse ready;
+        private Exception failed;
+        private boolean waiting;
+        private boolean finished;
+
+        PageScan(HttpTransport http, SecurePrefs prefs, String stage, @Nullable Predicate<Product> filter, int limit,
+                 Callback<List<Product>> cb) {
+            this.http = http;
+            this.prefs = prefs;
+            this.stage = stage;
+            this.filter = filter;
+            this.limit = limit;
+            this.cb = cb;
+        }
+
+        void start(String url) {
+            synchronized (this) { waiting = true; }
+            fetch(url);
+        }
+
+        private synchronized void fetch(String url) {
+            if (finished) return;
+            HttpRequest req = HttpRequest.get(url).headers(headers(prefs)).timeoutMs(12000);
+            inflight = http.enqueue(req, this::arrived, this::arrivedError);
+        }
+
+        private void arrived(HttpResponse resp) {
+            synchronized (this) {
+                if (finished) return;
+                inflight = null;
+                if (!waiting) { ready = resp; return; } // consumer still busy with the previous page
+                waiting = false;
+            }
+            consume(resp);
+        }
+
+        private void arrivedError(Exception err) {
+            synchronized (this) {
+                if (finished) return;
+                inflight = null;
+                if (!waiting) { failed = err; return; }
+                waiting = false;
+            }
+            fail(err);
+        }
+
+        private void consume(HttpResponse resp) {
+            final String next = nextLink(resp);
+            if (next != null) fetch(next); // prefetch N+1 while N is decoded
+            final int remaining = limit > 0 ? limit - acc.size() : 0;
+            // The decode is shared by coalesced scans; the filter and limit are this scan's own.
+            ParseStage.run(stage, resp, () -> ShopifyProductDecoder.decode(resp.body, null, 0),
+                    rows -> accepted(rows, filter, remaining),
+                    new Callback<List<Product>>() {
+                        @Override public void onSuccess(List<Product> page) {
+                            acc.addAll(page);
+                            if (!page.isEmpty()) PagedCallback.emit(cb, page);
+                            if (next == null || (limit > 0 && acc.size() >= limit)) {
+                                finish();
+                                cb.onSuccess(acc);
+                                return;
+                            }
+                            HttpResponse buffered;
+                            Exception err;
+                            synchronized (PageScan.this) {
+                                buffered = ready;
+                                err = failed;
+                                ready = null;
+                                failed = null;
+                                if (buffered == null && err == null) waiting = true;
+                            }
+                            if (err != null) fail(err);
+                            else if (buffered != null) consume(buffered);
+                        }
+                        @Override public void onError(Exception e) {
+                            finish();
+                            cb.onError(e);
+                        }
+                    });
+        }
+
+        private void fail(Exception err) {
+            finish();
+            ParseStage.fail(cb, new RuntimeException(verboseError(err)));
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            if (inflight != null) { inflight.cancel(); inflight = null; }
+        }
+    }
+
+    /** The rows {@code filter} accepts (all if null), at most {@code limit} (<= 0 = no limit). */
+    private static List<Product> accepted(List<Product> rows, @Nullable Predicate<Product> filter, int limit) {
+        if (filter == null && (limit <= 0 || rows.size() <= limit)) return rows;
+        List<Product> out = new ArrayList<>();
+        for (Product p : rows) {
+            if (filter != null && !filter.test(p)) continue;
+            out.add(p);
+            if (limit > 0 && out.size() >= limit) break;
+        }
+        return out;
     }
 
     // ============================================================================================
@@ -264,138 +450,97 @@ public class ShopifyRepository implements InventoryRepository {
 
     private void resolveFirstActiveLocationId(Context ctx, SecurePrefs prefs, Callback<Long> cb) {
         String url = baseRest(prefs) + "/locations.json";
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET, url, null,
-                resp -> {
-                    try {
-                        JSONArray arr = resp.optJSONArray("locations");
-                        if (arr == null || arr.length() == 0) {
-                            cb.onError(new IllegalStateException("Shopify has no locations on this store."));
-                            return;
-                        }
-                        Long chosen = null;
-                        for (int i = 0; i < arr.length(); i++) {
-                            JSONObject o = arr.optJSONObject(i);
-                            if (o == null) continue;
-                            boolean active = o.optBoolean("active", true);
-                            if (active) { chosen = o.optLong("id", 0L); break; }
-                        }
-                        if (chosen == null || chosen <= 0) {
-                            chosen = arr.optJSONObject(0).optLong("id", 0L);
-                        }
-                        if (chosen == null || chosen <= 0) {
-                            cb.onError(new IllegalStateException("Failed to read Shopify location id."));
-                            return;
-                        }
-                        prefs.setShopifyLocationId(chosen);
-                        cb.onSuccess(chosen);
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(12000, 1, 1.0f));
-        queue(ctx).add(req);
+        HttpRequest req = HttpRequest.get(url).headers(headers(prefs)).timeoutMs(12000);
+        transport(ctx).enqueue(req,
+                resp -> ParseStage.run("shopify.locations", resp, () -> {
+                    JSONObject json = resp.json();
+                    JSONArray arr = json.optJSONArray("locations");
+                    if (arr == null || arr.length() == 0) {
+                        throw new IllegalStateException("Shopify has no locations on this store.");
+                    }
+                    Long chosen = null;
+                    for (int i = 0; i < arr.length(); i++) {
+                        JSONObject o = arr.optJSONObject(i);
+                        if (o == null) continue;
+                        boolean active = o.optBoolean("active", true);
+                        if (active) { chosen = o.optLong("id", 0L); break; }
+                    }
+                    if (chosen == null || chosen <= 0) {
+                        chosen = arr.optJSONObject(0).optLong("id", 0L);
+                    }
+                    if (chosen == null || chosen <= 0) {
+                        throw new IllegalStateException("Failed to read Shopify location id.");
+                    }
+                    prefs.setShopifyLocationId(chosen);
+                    return chosen;
+                }, cb),
+                err -> ParseStage.fail(cb, new RuntimeException(verboseError(err))));
     }
 
-    /** Read current available to compute delta for GraphQL adjust. */
-    private void getCurrentAvailable(Context ctx, SecurePrefs prefs, long inventoryItemId, long locationIdLong,
-                                     Callback<Integer> cb) {
-        String url = baseRest(prefs) + "/inventory_levels.json?inventory_item_ids=" + inventoryItemId
-                + "&location_ids=" + locationIdLong;
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.GET, url, null,
-                resp -> {
-                    try {
-                        JSONArray levels = resp.optJSONArray("inventory_levels");
-                        if (levels != null && levels.length() > 0) {
-                            JSONObject lvl = levels.optJSONObject(0);
-                            int available = (lvl != null) ? lvl.optInt("available", 0) : 0;
-                            cb.onSuccess(available);
-                        } else {
-                            cb.onSuccess(0); // treat as zero if not present
-                        }
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(10000, 1, 1.0f));
-        queue(ctx).add(req);
+    /** GraphQL absolute set via inventorySetQuantities (batched per shop), compare-and-set when {@code expectedQty} is given. */
+    private void doSetInventoryGraphQL(Context ctx, SecurePrefs prefs, long inventoryItemId, long locationIdLong,
+                                       double newQty, @Nullable Double expectedQty, Callback<Product> cb) {
+        Integer expected = expectedQty != null ? (int) Math.round(expectedQty) : null;
+        batcher(prefs).set(sender(ctx, prefs), inventoryItemId, locationIdLong, (int) Math.round(newQty), expected,
+                new Callback<Boolean>() {
+                    @Override public void onSuccess(Boolean ok) {
+                        Product res = new Product();
+                        res.setDescription("Inventory updated");
+                        res.setCurrentStock(newQty);
+                        cb.onSuccess(res);
+                    }
+                    @Override public void onError(Exception e) { cb.onError(e); }
+                });
     }
 
-    /** GraphQL delta adjust via inventoryAdjustQuantities. */
-    private void doAdjustInventoryGraphQL(Context ctx, SecurePrefs prefs, long inventoryItemId, long locationIdLong,
-                                          int delta, Callback<Boolean> cb) {
-
-        String gidItem = "gid://shopify/InventoryItem/" + inventoryItemId;
-        String gidLoc  = "gid://shopify/Location/" + locationIdLong;
-
-        String mutation =
-                "mutation inventoryAdjustQuantities($input: InventoryAdjustQuantitiesInput!) {"
-                        + "  inventoryAdjustQuantities(input: $input) {"
-                        + "    userErrors { field message }"
-                        + "    inventoryAdjustmentGroup { createdAt reason referenceDocumentUri changes { name delta } }"
-                        + "  }"
-                        + "}";
-
-        JSONObject variables = new JSONObject();
-        JSONObject input = new JSONObject();
-        JSONArray changes = new JSONArray();
-        JSONObject change = new JSONObject();
-
-        try {
-            change.put("delta", delta);
-            change.put("inventoryItemId", gidItem);
-            change.put("locationId", gidLoc);
-            changes.put(change);
-
-            input.put("reason", "correction");
-            input.put("name", "available");
-            input.put("referenceDocumentUri", "easyinventory://android/manual-adjust");
-            input.put("changes", changes);
-
-            variables.put("input", input);
-        } catch (Exception e) { cb.onError(e); return; }
-
-        JSONObject body = new JSONObject();
-        try {
-            body.put("query", mutation);
-            body.put("variables", variables);
-        } catch (Exception e) { cb.onError(e); return; }
+    private ShopifyInventoryBatcher batcher(SecurePrefs prefs) {
+        return ShopifyInventoryBatcher.forShop(normalizeDomain(safe(prefs.getShopDomain())));
+    }
 
-        String url = baseGraphQL(prefs);
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.POST, url, body,
-                resp -> {
-                    try {
-                        JSONObject data = resp.optJSONObject("data");
-                        JSONObject iaq  = data != null ? data.optJSONObject("inventoryAdjustQuantities") : null;
-                        JSONArray userErrors = iaq != null ? iaq.optJSONArray("userErrors") : null;
-
-                        if (userErrors != null && userErrors.length() > 0) {
-                            // propagate as error so caller can fallback to REST
-                            StringBuilder sb = new StringBuilder("GraphQL userErrors: ");
-                            for (int i = 0; i < userErrors.length(); i++) {
-                                JSONObject ue = userErrors.optJSONObject(i);
-                                if (ue == null) continue;
-                                sb.append(ue.optString("message", "error"));
-                                if (i < userErrors.length() - 1) sb.append("; ");
-                            }
-                            cb.onError(new IllegalStateException(sb.toString()));
-                            return;
-                        }
-                        cb.onSuccess(true);
-                    } catch (Throwable t) { cb.onError(asException(t)); }
-                },
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
+    /** HTTP for one batch: one inventorySetQuantities mutation. */
+    private ShopifyInventoryBatcher.Sender sender(Context ctx, SecurePrefs prefs) {
+        return (quantities, compare, cb) -> {
+            JSONObject body = new JSONObject();
+            try {
+                JSONObject input = new JSONObject();
+                input.put("name", "available");
+                input.put("reason", "correction");
+                input.put("referenceDocumentUri", "easyinventory://android/manual-set");
+                input.put("ignoreCompareQuantity", !compare);
+                input.put("quantities", quantities);
+
+                body.put("query", SET_MUTATION);
+                body.put("variables", new JSONObject().put("input", input));
+            } catch (Exception e) { cb.onError(e); return; }
+
+            HttpRequest req = HttpRequest.post(baseGraphQL(prefs), body.toString(), JSON)
+                    .headers(headers(prefs)).timeoutMs(15000);
+            transport(ctx).enqueue(req,
+                    resp -> ParseStage.run("shopify.set", resp, () -> {
+                        JSONObject data = resp.json().optJSONObject("data");
+                        JSONObject isq  = data != null ? data.optJSONObject("inventorySetQuantities") : null;
+                        if (isq == null) throw new IllegalStateException("inventorySetQuantities returned no data.");
+                        JSONArray userErrors = isq.optJSONArray("userErrors");
+                        return userErrors != null ? userErrors : new JSONArray();
+                    }, cb),
+                    err -> ParseStage.fail(cb, new RuntimeException(verboseError(err), err)));
         };
-        req.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.2f));
-        queue(ctx).add(req);
+    }
+
+    private static final String SET_MUTATION =
+            "mutation inventorySetQuantities($input: InventorySetQuantitiesInput!) {"
+                    + "  inventorySetQuantities(input: $input) {"
+                    + "    userErrors { code field message }"
+                    + "  }"
+                    + "}";
+
+    /** Transport failure or 5xx somewhere in the cause chain (the transport error is kept as cause). */
+    private static boolean unavailable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof HttpException) return ((HttpException) t).code() >= 500;
+            if (t instanceof IOException || t instanceof VolleyError) return true;
+        }
+        return false;
     }
 
     /** Absolute set via REST (fallback if GraphQL fails). */
@@ -410,103 +555,35 @@ public class ShopifyRepository implements InventoryRepository {
             body.put("available", available);
         } catch (Exception e) { cb.onError(e); return; }
 
-        JsonObjectRequest req = new JsonObjectRequest(
-                Request.Method.POST, url, body,
-                resp -> cb.onSuccess(true),
-                err -> cb.onError(new RuntimeException(verboseVolleyError(err)))
-        ) {
-            @Override public Map<String, String> getHeaders() { return headers(prefs); }
-        };
-        req.setRetryPolicy(new DefaultRetryPolicy(15000, 1, 1.2f));
-        queue(ctx).add(req);
+        HttpRequest req = HttpRequest.post(url, body.toString(), JSON)
+                .headers(headers(prefs)).timeoutMs(15000);
+        transport(ctx).enqueue(req,
+                resp -> ParseStage.deliver(cb, true),
+                err -> ParseStage.fail(cb, new RuntimeException(verboseError(err))));
     }
 
     // ---- mapping helpers ----
 
-    private static List<Product> mapProducts(@Nullable JSONArray products, String needleLower) {
-        List<Product> out = new ArrayList<>();
-        if (products == null) return out;
-
-        final boolean filter = !TextUtils.isEmpty(needleLower);
-        for (int i = 0; i < products.length(); i++) {
-            JSONObject pr = products.optJSONObject(i);
-            if (pr == null) continue;
-
-            String productTitle = pr.optString("title", "");
-            JSONArray vars = pr.optJSONArray("variants");
-
-            if (vars == null || vars.length() == 0) {
-                if (!filter || productTitle.toLowerCase(Locale.ROOT).contains(needleLower)) {
-                    Product p = new Product();
-                    p.setDescription(productTitle);
-                    p.setCurrentStock(0d);
-                    p.setProvider("SHOPIFY");
-                    out.add(p);
-                }
-                continue;
-            }
-
-            for (int v = 0; v < vars.length(); v++) {
-                JSONObject var = vars.optJSONObject(v);
-                if (var == null) continue;
-
-                String vTitle  = var.optString("title", "");
-                String display = productTitle;
-                if (!"Default Title".equalsIgnoreCase(vTitle) && !TextUtils.isEmpty(vTitle)) {
-                    display = productTitle + " — " + vTitle;
-                }
-
-                String sku     = var.optString("sku", "");
-                String barcode = var.optString("barcode", "");
-                String priceS  = var.optString("price", "0");
-                double qty     = var.optDouble("inventory_quantity", 0d);
-                long inventoryItemId = var.optLong("inventory_item_id", 0L);
-
-                if (filter) {
-                    String s = sku == null ? "" : sku.toLowerCase(Locale.ROOT);
-                    String b = barcode == null ? "" : barcode.toLowerCase(Locale.ROOT);
-                    if (!(display.toLowerCase(Locale.ROOT).contains(needleLower)
-                            || s.contains(needleLower) || b.contains(needleLower))) {
-                        continue;
-                    }
-                }
-
-                Product p = new Product();
-                p.setDescription(display);
-                p.setSku(sku);
-                p.setBarcode(barcode);
-                try { p.setPriceBig(new java.math.BigDecimal(priceS)); }
-                catch (Exception ignored) { p.setPriceBig(java.math.BigDecimal.ZERO); }
-                p.setCurrentStock(qty);
-                p.setProvider("SHOPIFY");
-                if (inventoryItemId > 0) p.setInventoryItemId(inventoryItemId);
-                out.add(p);
-            }
-        }
-        return out;
-    }
-
-    private static Product mapOne(JSONObject product, JSONObject variant) {
-        String title   = product.optString("title", "");
-        String vTitle  = variant.optString("title", "");
-        String display = "Default Title".equalsIgnoreCase(vTitle) || TextUtils.isEmpty(vTitle)
-                ? title : (title + " — " + vTitle);
-
-        Product p = new Product();
-        p.setDescription(display);
-        p.setSku(variant.optString("sku", ""));
-        p.setBarcode(variant.optString("barcode", ""));
-        try { p.setPriceBig(new java.math.BigDecimal(variant.optString("price", "0"))); }
-        catch (Exception ignored) { p.setPriceBig(java.math.BigDecimal.ZERO); }
-        p.setCurrentStock(variant.optDouble("inventory_quantity", 0d));
-        p.setProvider("SHOPIFY");
-        long inventoryItemId = variant.optLong("inventory_item_id", 0L);
-        if (inventoryItemId > 0) p.setInventoryItemId(inventoryItemId);
-        return p;
+    /** Every query token in name / sku / barcode, typos tolerated; null = accept all. */
+    @Nullable
+    private static Predicate<Product> matcher(String needleLower) {
+        String[] tokens = SearchText.tokens(needleLower);
+        if (tokens.length == 0) return null;
+        return p -> FuzzyMatch.score(tokens, p.getSearchKey()) != FuzzyMatch.NO_MATCH;
     }
 
-    private static Exception asException(Throwable t) {
-        return (t instanceof Exception) ? (Exception) t : new Exception(t);
+    /** URL of the rel="next" entry of a Shopify Link header, or null on the last page. */
+    @Nullable
+    static String nextLink(HttpResponse resp) {
+        String link = resp.header("Link");
+        if (TextUtils.isEmpty(link)) return null;
+        for (String part : link.split(",")) {
+            String p = part.trim();
+            if (!p.contains("rel=\"next\"")) continue;
+            int a = p.indexOf('<'), b = p.indexOf('>');
+            if (a >= 0 && b > a) return p.substring(a + 1, b);
+        }
+        return null;
     }
 
     private static final class ISO8601 {
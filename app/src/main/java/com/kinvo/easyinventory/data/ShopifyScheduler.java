@@ -0,0 +1,430 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.data.http.HttpException;
+import com.kinvo.easyinventory.data.http.HttpRequest;
+import com.kinvo.easyinventory.data.http.HttpResponse;
+import com.kinvo.easyinventory.data.http.HttpTransport;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-shop pacing of Shopify Admin API calls, so bulk work runs at the limit instead of into 429s.
+ * - REST: leaky bucket. X-Shopify-Shop-Api-Call-Limit ("used/capacity") resyncs the level after
+ *   every response; between responses the level drains at capacity/20 per second (40 -> 2/s,
+ *   Plus 80 -> 4/s) and each dispatched call adds one.
+ * - GraphQL: point budget from extensions.cost.throttleStatus (currentlyAvailable, restoreRate);
+ *   each call reserves the last requestedQueryCost seen until its response reports the real budget.
+ * Requests wait in a FIFO per lane and are released as soon as the estimate allows. A 429 or a
+ * THROTTLED GraphQL reply resyncs the lane and re-queues the call after the computed wait
+ * (Retry-After when given) — a few times at most, never a blind loop.
+ */
+final class ShopifyScheduler {
+
+    private static final String TAG = "ShopifyScheduler";
+
+    private static final int REST_HEADROOM = 2;        // keep this many REST slots free
+    private static final double GQL_HEADROOM = 50d;    // points kept in reserve
+    private static final int MAX_REQUEUES = 3;
+
+    private static final Map<String, ShopifyScheduler> SHOPS = new HashMap<>();
+    private static ScheduledExecutorService timer;
+
+    /** One scheduler per shop domain for the life of the process (cleared by {@link #reset()}). */
+    static synchronized ShopifyScheduler forShop(@NonNull String shop) {
+        ShopifyScheduler s = SHOPS.get(shop);
+        if (s == null) {
+            s = new ShopifyScheduler(shop);
+            SHOPS.put(shop, s);
+        }
+        return s;
+    }
+
+    /** Forget all budgets and drop queued calls (logout). */
+    static synchronized void reset() {
+        for (ShopifyScheduler s : SHOPS.values()) s.clear();
+        SHOPS.clear();
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "shopify-pacer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+
+    private final String shop;
+    private final Lane rest = new RestLane();
+    private final Lane graphql = new GraphQLLane();
+
+    private ShopifyScheduler(String shop) {
+        this.shop = shop;
+    }
+
+    /** A transport view that paces calls for this shop through {@code delegate}. */
+    @NonNull
+    HttpTransport over(@NonNull HttpTransport delegate) {
+        return new HttpTransport() {
+            @NonNull @Override
+            public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse,
+                                @NonNull OnFailure onFailure) {
+                Pending p = new Pending(delegate, request, onResponse, onFailure);
+                laneFor(request).offer(p);
+                return p;
+            }
+
+            @Override public void shutdown() { delegate.shutdown(); }
+        };
+    }
+
+    private Lane laneFor(HttpRequest r) {
+        return r.url.endsWith("/graphql.json") ? graphql : rest;
+    }
+
+    private void clear() {
+        rest.clear();
+        graphql.clear();
+    }
+
+    // ============================================================================================
+    // Queued call
+    // ============================================================================================
+
+    private final class Pending implements HttpTransport.Call {
+        final HttpTransport delegate;
+        final HttpRequest request;
+        final HttpTransport.OnResponse onResponse;
+        final HttpTransport.OnFailure onFailure;
+        volatile boolean cancelled;
+        @Nullable volatile HttpTransport.Call inflight;
+        @Nullable volatile Lane lane;
+        double reserved;
+        int requeues;
+
+        Pending(HttpTransport delegate, HttpRequest request,
+                HttpTransport.OnResponse onResponse, HttpTransport.OnFailure onFailure) {
+            this.delegate = delegate;
+            this.request = request;
+            this.onResponse = onResponse;
+            this.onFailure = onFailure;
+        }
+
+        @Override public void cancel() {
+            cancelled = true;
+            HttpTransport.Call c = inflight;
+            Lane l = lane;
+            if (c != null) c.cancel();
+            if (l != null) l.release(this); // a cancelled call never reports back
+        }
+
+        void dispatch(Lane lane) {
+            this.lane = lane;
+            inflight = delegate.enqueue(request,
+                    resp -> {
+                        long waitMs = lane.observe(this, resp);
+                        if (waitMs >= 0 && requeues++ < MAX_REQUEUES && !cancelled) {
+                            lane.requeue(this, waitMs);
+                        } else if (!cancelled) {
+                            onResponse.onResponse(resp);
+                        }
+                    },
+                    err -> {
+                        long waitMs = err instanceof HttpException
+                                ? lane.observe(this, ((HttpException) err).response) : lane.release(this);
+                        if (waitMs >= 0 && requeues++ < MAX_REQUEUES && !cancelled) {
+                            lane.requeue(this, waitMs);
+                        } else if (!cancelled) {
+                            onFailure.onFailure(err);
+                        }
+                    });
+        }
+    }
+
+    // ============================================================================================
+    // Lanes
+    // ============================================================================================
+
+    private abstract class Lane {
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        private boolean timerArmed;
+        long pausedUntil; // set by 429 / THROTTLED
+
+        synchronized void offer(Pending p) {
+            queue.addLast(p);
+            pump();
+        }
+
+        synchronized void requeue(Pending p, long waitMs) {
+            pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + waitMs);
+            Logx.w(TAG, shop + ": throttled, retrying " + p.request + " in " + waitMs + "ms");
+            queue.addFirst(p);
+            pump();
+        }
+
+        synchronized void clear() {
+            Pending[] dropped = queue.toArray(new Pending[0]);
+            queue.clear();
+            for (Pending p : dropped) p.cancel();
+        }
+
+        /** Release as many queued calls as the budget allows; arm the timer for the rest. */
+        synchronized void pump() {
+            while (!queue.isEmpty()) {
+                Pending head = queue.peekFirst();
+                if (head.cancelled) { queue.pollFirst(); continue; }
+                long now = System.currentTimeMillis();
+                long waitMs = Math.max(pausedUntil - now, waitMs(now));
+                if (waitMs > 0) {
+                    if (!timerArmed) {
+                        timerArmed = true;
+                        timer().schedule(() -> {
+                            synchronized (Lane.this) { timerArmed = false; pump(); }
+                        }, waitMs, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+                queue.pollFirst();
+                head.reserved = reserve(now);
+                head.dispatch(this);
+            }
+        }
+
+        /** Milliseconds until one more call fits (0 = now). */
+        abstract long waitMs(long now);
+
+        /** Take budget for one call; returns the amount to hand back on completion. */
+        abstract double reserve(long now);
+
+        /** Account for a finished call. Returns a re-queue delay (ms) if throttled, else -1. */
+        abstract long observe(Pending p, HttpResponse r);
+
+        /** A call that failed without a response (I/O): just give its reservation back. */
+        synchronized long release(Pending p) {
+            settle(p.reserved);
+            p.reserved = 0;
+            pump();
+            return -1;
+        }
+
+        abstract void settle(double reserved);
+    }
+
+    /** REST leaky bucket. */
+    private final class RestLane extends Lane {
+        private int capacity = 40;
+        private double level;      // estimated bucket fill at `at`
+        private long at = System.currentTimeMillis();
+        private int inFlight;
+
+        private double leakPerMs() { return capacity / 20d / 1000d; }
+
+        private void drain(long now) {
+            level = Math.max(0d, level - (now - at) * leakPerMs());
+            at = now;
+        }
+
+        @Override long waitMs(long now) {
+            drain(now);
+            double over = level + inFlight + 1 - (capacity - REST_HEADROOM);
+            return over <= 0 ? 0 : (long) Math.ceil(over / leakPerMs());
+        }
+
+        @Override double reserve(long now) {
+            inFlight++;
+            return 1;
+        }
+
+        @Override void settle(double reserved) {
+            inFlight = Math.max(0, inFlight - (int) reserved);
+        }
+
+        @Override synchronized long observe(Pending p, HttpResponse r) {
+            settle(p.reserved);
+            p.reserved = 0;
+            long now = System.currentTimeMillis();
+            String limit = r.header("X-Shopify-Shop-Api-Call-Limit");
+            int slash = limit == null ? -1 : limit.indexOf('/');
+            if (slash > 0) {
+                try {
+                    int used = Integer.parseInt(limit.substring(0, slash).trim());
+                    int cap = Integer.parseInt(limit.substring(slash + 1).trim());
+                    if (cap > 0) capacity = cap;
+                    level = used;
+                    at = now;
+                } catch (NumberFormatException ignored) {}
+            }
+            long wait = -1;
+            if (r.code == 429) {
+                level = capacity;
+                at = now;
+                wait = retryAfterMs(r, (long) Math.ceil(1d / leakPerMs()));
+            }
+            pump();
+            return wait;
+        }
+    }
+
+    /** GraphQL cost budget. */
+    private final class GraphQLLane extends Lane {
+        private double maximum = 1000d;
+        private double available = 1000d; // estimated at `at`
+        private double restorePerMs = 50d / 1000d;
+        private double typicalCost = 10d;  // last requestedQueryCost
+        private double reservedTotal;
+        private long at = System.currentTimeMillis();
+
+        private void restore(long now) {
+            available = Math.min(maximum, available + (now - at) * restorePerMs);
+            at = now;
+        }
+
+        @Override long waitMs(long now) {
+            restore(now);
+            double need = typicalCost + reservedTotal + GQL_HEADROOM - available;
+            if (need <= 0 || reservedTotal == 0 && available >= maximum) return 0;
+            return (long) Math.ceil(need / restorePerMs);
+        }
+
+        @Override double reserve(long now) {
+            reservedTotal += typicalCost;
+            return typicalCost;
+        }
+
+        @Override void settle(double reserved) {
+            reservedTotal = Math.max(0d, reservedTotal - reserved);
+        }
+
+        @Override synchronized long observe(Pending p, HttpResponse r) {
+            settle(p.reserved);
+            p.reserved = 0;
+            long now = System.currentTimeMillis();
+            GqlStatus st = GqlStatus.of(r);
+            if (st != null) {
+                if (!Double.isNaN(st.requested) && st.requested > 0) typicalCost = st.requested;
+                if (!Double.isNaN(st.available)) {
+                    if (!Double.isNaN(st.maximum)) maximum = st.maximum;
+                    available = st.available;
+                    if (!Double.isNaN(st.restoreRate)) restorePerMs = Math.max(1d, st.restoreRate) / 1000d;
+                    at = now;
+                }
+            }
+            long wait = -1;
+            if (r.code == 429 || (st != null && st.throttled)) {
+                double need = Math.max(0d, typicalCost + GQL_HEADROOM - available);
+                wait = retryAfterMs(r, (long) Math.ceil(need / restorePerMs));
+            }
+            pump();
+            return wait;
+        }
+    }
+
+    // ============================================================================================
+    // Response helpers
+    // ============================================================================================
+
+    private static long retryAfterMs(HttpResponse r, long fallbackMs) {
+        String h = r.header("Retry-After");
+        if (h != null) {
+            try { return (long) (Double.parseDouble(h.trim()) * 1000d); }
+            catch (NumberFormatException ignored) {}
+        }
+        return Math.max(0L, fallbackMs);
+    }
+
+    /**
+     * The budget a GraphQL reply reports: extensions.cost (requestedQueryCost, throttleStatus) and
+     * whether errors[] carries extensions.code THROTTLED. Read with a streaming reader; "data" is
+     * skipped, not built. NaN = not reported.
+     */
+    private static final class GqlStatus {
+        double requested = Double.NaN;
+        double maximum = Double.NaN;
+        double available = Double.NaN;
+        double restoreRate = Double.NaN;
+        boolean throttled;
+
+        /** null if the body is not a JSON object (e.g. an HTML error page). */
+        @Nullable
+        static GqlStatus of(HttpResponse resp) {
+            if (resp.body.length == 0) return null;
+            GqlStatus st = new GqlStatus();
+            try (JsonReader r = JsonStreams.open(resp.body)) {
+                if (r.peek() != JsonToken.BEGIN_OBJECT) return null;
+                r.beginObject();
+                while (r.hasNext()) {
+                    switch (r.nextName()) {
+                        case "extensions": st.readExtensions(r); break;
+                        case "errors":     st.readErrors(r); break;
+                        default:           r.skipValue();
+                    }
+                }
+                return st;
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        private void readExtensions(JsonReader r) throws IOException {
+            if (!JsonStreams.enterObject(r)) return;
+            while (r.hasNext()) {
+                if (!"cost".equals(r.nextName()) || !JsonStreams.enterObject(r)) { r.skipValue(); continue; }
+                while (r.hasNext()) {
+                    switch (r.nextName()) {
+                        case "requestedQueryCost": requested = JsonStreams.dbl(r, Double.NaN); break;
+                        case "throttleStatus":     readThrottleStatus(r); break;
+                        default:                   r.skipValue();
+                    }
+                }
+                r.endObject();
+            }
+            r.endObject();
+        }
+
+        private void readThrottleStatus(JsonReader r) throws IOException {
+            if (!JsonStreams.enterObject(r)) return;
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "maximumAvailable":   maximum = JsonStreams.dbl(r, Double.NaN); break;
+                    case "currentlyAvailable": available = JsonStreams.dbl(r, Double.NaN); break;
+                    case "restoreRate":        restoreRate = JsonStreams.dbl(r, Double.NaN); break;
+                    default:                   r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+
+        /** errors: [ { "message": ..., "extensions": { "code": "THROTTLED" } } ] */
+        private void readErrors(JsonReader r) throws IOException {
+            if (r.peek() != JsonToken.BEGIN_ARRAY) { r.skipValue(); return; }
+            r.beginArray();
+            while (r.hasNext()) {
+                if (!JsonStreams.enterObject(r)) continue;
+                while (r.hasNext()) {
+                    if (!"extensions".equals(r.nextName()) || !JsonStreams.enterObject(r)) { r.skipValue(); continue; }
+                    while (r.hasNext()) {
+                        if ("code".equals(r.nextName())) throttled |= "THROTTLED".equals(JsonStreams.string(r));
+                        else r.skipValue();
+                    }
+                    r.endObject();
+                }
+                r.endObject();
+            }
+            r.endArray();
+        }
+    }
+}
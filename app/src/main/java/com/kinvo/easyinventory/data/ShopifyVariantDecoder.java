@@ -0,0 +1,209 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kinvo.easyinventory.model.Product;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoder for the GraphQL productVariants search:
+ * { "data": { "productVariants": { "edges": [ { "node": {...} } ], "pageInfo": {...} } },
+ *   "errors": [...], "extensions": {...} }
+ * Produces one Product per variant node, shaped like {@link ShopifyProductDecoder}'s output.
+ */
+final class ShopifyVariantDecoder {
+
+    private ShopifyVariantDecoder() {}
+
+    static final class Page {
+        final List<Product> products = new ArrayList<>();
+        boolean hasNextPage;
+        @Nullable String endCursor;
+    }
+
+    static Page decode(byte[] body) throws IOException {
+        Page page = new Page();
+        String error = null;
+        boolean sawData = false;
+        try (JsonReader r = JsonStreams.open(body)) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) return page;
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "data":
+                        sawData = r.peek() == JsonToken.BEGIN_OBJECT;
+                        readData(r, page);
+                        break;
+                    case "errors":
+                        error = readFirstError(r);
+                        break;
+                    default:
+                        r.skipValue();
+                }
+            }
+        }
+        // Partial data with errors is still usable; errors without data are not (e.g. THROTTLED, bad query).
+        if (error != null && !sawData) throw new IllegalStateException("GraphQL error: " + error);
+        return page;
+    }
+
+    private static void readData(JsonReader r, Page page) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return; }
+        r.beginObject();
+        while (r.hasNext()) {
+            if (!"productVariants".equals(r.nextName()) || r.peek() != JsonToken.BEGIN_OBJECT) {
+                r.skipValue();
+                continue;
+            }
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "edges":    readEdges(r, page.products); break;
+                    case "nodes":    readNodes(r, page.products); break;
+                    case "pageInfo": readPageInfo(r, page); break;
+                    default:         r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+        r.endObject();
+    }
+
+    private static void readEdges(JsonReader r, List<Product> out) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_ARRAY) { r.skipValue(); return; }
+        r.beginArray();
+        while (r.hasNext()) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); continue; }
+            r.beginObject();
+            while (r.hasNext()) {
+                if ("node".equals(r.nextName()) && r.peek() == JsonToken.BEGIN_OBJECT) out.add(readVariant(r));
+                else r.skipValue();
+            }
+            r.endObject();
+        }
+        r.endArray();
+    }
+
+    private static void readNodes(JsonReader r, List<Product> out) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_ARRAY) { r.skipValue(); return; }
+        r.beginArray();
+        while (r.hasNext()) {
+            if (r.peek() == JsonToken.BEGIN_OBJECT) out.add(readVariant(r));
+            else r.skipValue();
+        }
+        r.endArray();
+    }
+
+    private static Product readVariant(JsonReader r) throws IOException {
+        Product p = new Product();
+        p.setProvider("SHOPIFY");
+        p.setSku("");
+        p.setBarcode("");
+        p.setCurrentStock(0d);
+        String vTitle = null, pTitle = "";
+
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "id": {
+                    long id = gidTail(JsonStreams.string(r));
+                    if (id > 0) p.setVariantId(id);
+                    break;
+                }
+                case "title":             vTitle = JsonStreams.string(r); break;
+                case "sku":               p.setSku(nz(JsonStreams.string(r))); break;
+                case "barcode":           p.setBarcode(nz(JsonStreams.string(r))); break;
+                case "price":             p.setPriceBig(price(JsonStreams.string(r))); break;
+                case "inventoryQuantity": p.setCurrentStock(JsonStreams.dbl(r, 0d)); break;
+                case "updatedAt": {
+                    long t = JsonStreams.isoMillis(JsonStreams.string(r));
+                    if (t > 0) p.setUpdatedAtMs(t);
+                    break;
+                }
+                case "inventoryItem": {
+                    long id = gidTail(readId(r));
+                    if (id > 0) p.setInventoryItemId(id);
+                    break;
+                }
+                case "product": {
+                    String t = readField(r, "title");
+                    pTitle = t == null ? "" : t;
+                    break;
+                }
+                default: r.skipValue();
+            }
+        }
+        r.endObject();
+
+        p.setDescription(!"Default Title".equalsIgnoreCase(vTitle) && vTitle != null && !vTitle.isEmpty()
+                ? pTitle + " — " + vTitle : pTitle);
+        p.buildSearchKey();
+        return p;
+    }
+
+    private static void readPageInfo(JsonReader r, Page page) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return; }
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "hasNextPage": page.hasNextPage = JsonStreams.bool(r, false); break;
+                case "endCursor":   page.endCursor = JsonStreams.string(r); break;
+                default:            r.skipValue();
+            }
+        }
+        r.endObject();
+    }
+
+    @Nullable
+    private static String readFirstError(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_ARRAY) return JsonStreams.string(r);
+        String first = null;
+        r.beginArray();
+        while (r.hasNext()) {
+            String msg = r.peek() == JsonToken.BEGIN_OBJECT ? readField(r, "message") : JsonStreams.string(r);
+            if (first == null) first = msg;
+        }
+        r.endArray();
+        return first == null ? "unknown" : first;
+    }
+
+    @Nullable
+    private static String readId(JsonReader r) throws IOException {
+        return readField(r, "id");
+    }
+
+    /** One string field of a nested object; the rest of the object is skipped. */
+    @Nullable
+    private static String readField(JsonReader r, String name) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) { r.skipValue(); return null; }
+        String v = null;
+        r.beginObject();
+        while (r.hasNext()) {
+            if (name.equals(r.nextName())) v = JsonStreams.string(r);
+            else r.skipValue();
+        }
+        r.endObject();
+        return v;
+    }
+
+    /** "gid://shopify/ProductVariant/123" -> 123 (0 if absent). */
+    static long gidTail(@Nullable String gid) {
+        if (gid == null || gid.isEmpty()) return 0L;
+        int slash = gid.lastIndexOf('/');
+        try { return Long.parseLong(slash >= 0 ? gid.substring(slash + 1) : gid); }
+        catch (NumberFormatException e) { return 0L; }
+    }
+
+    private static BigDecimal price(@Nullable String s) {
+        try { return new BigDecimal(s == null ? "0" : s); }
+        catch (Exception ignored) { return BigDecimal.ZERO; }
+    }
+
+    private static String nz(@Nullable String s) { return s == null ? "" : s; }
+}
@@ -0,0 +1,11 @@
+package com.kinvo.easyinventory.data;
+
+/**
+ * A compare-and-set stock update was refused: the provider's quantity is no longer the one the
+ * change was based on (someone sold or counted in the meantime). Nothing was changed.
+ */
+public class StockConflictException extends IllegalStateException {
+    public StockConflictException(String message) {
+        super(message);
+    }
+}
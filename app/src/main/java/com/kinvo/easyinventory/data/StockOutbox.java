@@ -0,0 +1,588 @@
+package com.kinvo.easyinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.SecurePrefs;
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.Digest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Durable write-ahead outbox for stock updates.
+ * A count is journaled to SQLite (and applied to the local catalog) before anything touches the
+ * network, so the counter never waits on the provider and a dropped connection loses nothing.
+ * Operations are replayed one at a time, oldest due first (one backing off does not hold up the
+ * rest); due Shopify operations go out together so they share one batched call. Replay runs on
+ * enqueue, when the app comes back, and whenever the default network becomes available.
+ * Updates are absolute, so a new count for a product replaces whatever is still queued for it.
+ * Each operation also carries the quantity the count was based on; Shopify applies it as a
+ * compare-and-set, and a {@link StockConflictException} parks it at once. Other failed sends back
+ * off exponentially; after {@link #MAX_ATTEMPTS} the operation is parked as {@link Status#FAILED}
+ * until the product is counted again. A send that times out may still land, so its quantity is
+ * remembered: if the retry then hits a conflict, it is sent once more comparing against that
+ * quantity (a no-op that succeeds if the first send landed). Operations belong to the account that made them (provider +
+ * a digest of its identity): signing out keeps them, and they are replayed once that account signs
+ * in again. While a count is unsent, catalog syncs keep it over the provider's quantity
+ * ({@link #keepPending}). All DB work runs on one writer thread; listeners are called on main.
+ */
+public final class StockOutbox extends SQLiteOpenHelper {
+
+    private static final String TAG = "StockOutbox";
+    private static final String DB_NAME = "outbox.db";
+    private static final int DB_VERSION = 4;
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long RETRY_BASE_MS = 5_000L;
+    private static final long RETRY_CAP_MS = 5 * 60_000L;
+    // A cancelled call (transport shutdown / scheduler reset) never calls back; don't wait forever.
+    private static final long SEND_TIMEOUT_MS = 2 * 60_000L;
+    private static final int SHOPIFY_BATCH = 100; // ops sent together (one inventorySetQuantities)
+
+    /** Sync state of a product's last stock change. */
+    public enum Status { NONE, PENDING, FAILED }
+
+    public interface Listener {
+        void onOutboxChanged();
+    }
+
+    // ---- Singleton ----
+    private static StockOutbox INSTANCE;
+    public static synchronized StockOutbox get(@NonNull Context ctx) {
+        if (INSTANCE == null) {
+            INSTANCE = new StockOutbox(ctx.getApplicationContext());
+        }
+        return INSTANCE;
+    }
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "outbox-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Context app;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Map<String, Status> status = new ConcurrentHashMap<>(); // provider|row key
+    private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    private final Runnable retry = () -> WRITER.execute(this::drain);
+
+    // Writer thread only.
+    private boolean loaded;
+    private final Set<Long> sending = new HashSet<>(); // ops on the wire
+    @Nullable private ConnectivityManager.NetworkCallback watcher;
+
+    private StockOutbox(Context app) {
+        super(app, DB_NAME, null, DB_VERSION);
+        this.app = app;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE ops ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "provider TEXT NOT NULL,"
+                + "row_key TEXT NOT NULL,"
+                + "target_id INTEGER NOT NULL,"
+                + "location_id INTEGER NOT NULL,"
+                + "external_id TEXT,"
+                + "qty REAL NOT NULL,"
+                + "expected_qty REAL,"
+                + "created_at INTEGER NOT NULL,"
+                + "attempts INTEGER NOT NULL DEFAULT 0,"
+                + "next_at INTEGER NOT NULL DEFAULT 0,"
+                + "failed INTEGER NOT NULL DEFAULT 0,"
+                + "last_error TEXT,"
+                + "account TEXT NOT NULL DEFAULT '',"
+                + "unsure_qty REAL)"); // qty of a timed-out send that may have landed
+        db.execSQL("CREATE INDEX idx_ops_row ON ops(provider, row_key)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) db.execSQL("ALTER TABLE ops ADD COLUMN expected_qty REAL");
+        if (oldVersion < 3) db.execSQL("ALTER TABLE ops ADD COLUMN account TEXT NOT NULL DEFAULT ''");
+        if (oldVersion < 4) db.execSQL("ALTER TABLE ops ADD COLUMN unsure_qty REAL");
+    }
+
+    // ============================================================================================
+    // API
+    // ============================================================================================
+
+    /**
+     * Journal "stock of {@code p} is now {@code qty}" and return at once; the provider call happens
+     * in the background. {@code targetId} = EPOS StockItemId or Shopify inventory_item_id (Clover
+     * uses the product's externalId instead); {@code locationId} as the repository expects it;
+     * {@code expectedQty} = the quantity shown when the count was made (null = unconditional).
+     */
+    public void enqueue(@NonNull DataSource ds, @NonNull Product p, long targetId, int locationId, double qty,
+                        @Nullable Double expectedQty) {
+        String rowKey = CatalogStore.rowKey(p);
+        long scope = CatalogRepository.scopeOf(ds, locationId);
+        String account = account(app);
+        status.put(key(ds.name(), rowKey), Status.PENDING);
+        changed();
+        WRITER.execute(() -> {
+            try {
+                if (account == null) throw new IllegalStateException("not signed in");
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    // Absolute quantities: only the newest count per product is worth sending.
+                    String[] row = {account, ds.name(), rowKey};
+                    Double expected = inheritedExpected(db, row, expectedQty);
+                    Double unsure = inheritedUnsure(db, row);
+                    db.delete("ops", "account=? AND provider=? AND row_key=?", row);
+                    ContentValues cv = new ContentValues();
+                    cv.put("account", account);
+                    cv.put("provider", ds.name());
+                    cv.put("row_key", rowKey);
+                    cv.put("target_id", targetId);
+                    cv.put("location_id", locationId);
+                    cv.put("external_id", p.getExternalId());
+                    cv.put("qty", qty);
+                    cv.put("expected_qty", expected);
+                    cv.put("unsure_qty", unsure);
+                    cv.put("created_at", System.currentTimeMillis());
+                    db.insertOrThrow("ops", null, cv);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (Throwable t) {
+                Logx.w(TAG, "journal failed: " + t);
+                status.put(key(ds.name(), rowKey), Status.FAILED);
+                changed();
+                return;
+            }
+            CatalogStore store = CatalogStore.get(app);
+            store.write(() -> store.updateStock(ds, scope, p, qty));
+            drain();
+        });
+    }
+
+    /** Load the journal (first call) and replay whatever is due. Safe to call often (e.g. onResume). */
+    public void resume() {
+        WRITER.execute(this::drain);
+    }
+
+    /**
+     * What the provider still holds for a product whose earlier count is replaced: a queued op never
+     * reached it, so its base carries over; one on the wire is assumed to land (the caller's value);
+     * after a parked failure the new count is taken as authoritative (no compare).
+     */
+    @Nullable
+    private Double inheritedExpected(SQLiteDatabase db, String[] row, @Nullable Double callers) {
+        Cursor c = db.rawQuery("SELECT _id, expected_qty, failed FROM ops WHERE account=? AND provider=? AND row_key=?"
+                + " ORDER BY _id LIMIT 1", row);
+        try {
+            if (!c.moveToFirst() || sending.contains(c.getLong(0))) return callers;
+            if (c.getInt(2) != 0) return null;
+            return c.isNull(1) ? null : c.getDouble(1);
+        } finally {
+            c.close();
+        }
+    }
+
+    /** A timed-out send of the replaced op may have landed; its quantity is what the provider may hold. */
+    @Nullable
+    private static Double inheritedUnsure(SQLiteDatabase db, String[] row) {
+        Cursor c = db.rawQuery("SELECT unsure_qty FROM ops WHERE account=? AND provider=? AND row_key=?"
+                + " AND failed=0 ORDER BY _id LIMIT 1", row);
+        try {
+            return c.moveToFirst() && !c.isNull(0) ? c.getDouble(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    @NonNull
+    public Status status(@NonNull DataSource ds, @NonNull Product p) {
+        Status s = status.get(key(ds.name(), CatalogStore.rowKey(p)));
+        return s != null ? s : Status.NONE;
+    }
+
+    /**
+     * Rows of a catalog sync (off main): where a count of the product is still waiting to be sent,
+     * keep the counted quantity instead of the provider's older one. Parked ops don't count: the
+     * provider's quantity is the one to recount from. Returns {@code rows}.
+     */
+    @NonNull
+    public List<Product> keepPending(@NonNull DataSource ds, @NonNull List<Product> rows) {
+        String account = account(app);
+        if (account == null || rows.isEmpty()) return rows;
+        Map<String, Double> unsent = new HashMap<>();
+        try {
+            Cursor c = getReadableDatabase().rawQuery("SELECT row_key, qty FROM ops WHERE account=? AND provider=?"
+                    + " AND failed=0", new String[]{account, ds.name()});
+            try {
+                while (c.moveToNext()) unsent.put(c.getString(0), c.getDouble(1));
+            } finally {
+                c.close();
+            }
+        } catch (Throwable t) {
+            Logx.w(TAG, "outbox read failed: " + t);
+        }
+        if (unsent.isEmpty()) return rows;
+        for (Product p : rows) {
+            Double qty = unsent.get(CatalogStore.rowKey(p));
+            if (qty != null) p.setCurrentStock(qty);
+        }
+        return rows;
+    }
+
+    public void addListener(@NonNull Listener l) { listeners.add(l); }
+
+    public void removeListener(@NonNull Listener l) { listeners.remove(l); }
+
+    /**
+     * Logout / account switch: stop replaying and forget the shown status. The journal is kept
+     * (counts not yet synced are not lost); the next account only sees and sends its own ops.
+     */
+    public static void signedOut(@NonNull Context ctx) {
+        StockOutbox outbox = get(ctx);
+        outbox.status.clear();
+        WRITER.execute(() -> {
+            outbox.sending.clear(); // whatever is on the wire no longer matters
+            outbox.loaded = false;  // reload the status of whoever signs in next
+            outbox.unwatchNetwork();
+        });
+        outbox.changed();
+    }
+
+    /** Who the ops belong to: provider + digest of the login's identity; null = signed out. */
+    @Nullable
+    private static String account(Context ctx) {
+        SecurePrefs p = SecurePrefs.get(ctx);
+        DataSource ds = p.getProvider();
+        String id;
+        switch (ds) {
+            case SHOPIFY: id = p.getShopDomain() != null ? p.getShopDomain().toLowerCase(Locale.ROOT) : null; break;
+            case CLOVER:  id = p.getCloverMerchantId(); break;
+            default:      id = !TextUtils.isEmpty(p.getApiKey()) ? p.getApiKey() : p.getAuthHeaderBasic();
+        }
+        return TextUtils.isEmpty(id) ? null : ds.name() + ':' + Digest.sha256Hex(id.trim());
+    }
+
+    // ============================================================================================
+    // Replay (writer thread)
+    // ============================================================================================
+
+    private static final class Op {
+        long id;
+        String account;
+        DataSource ds;
+        String rowKey;
+        long targetId;
+        int locationId;
+        String externalId;
+        double qty;
+        @Nullable Double expected;
+        @Nullable Double unsure;
+        int attempts;
+    }
+
+    private void drain() {
+        String account = account(app);
+        if (account == null) return; // signed out: keep everything for later
+        if (!loaded) load(account);
+        if (!sending.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        List<Op> ops;
+        long nextAt;
+        try {
+            ops = due(now, account, 1);
+            // Shopify batches the sets it gets within a short window: hand it every due one.
+            if (!ops.isEmpty() && ops.get(0).ds == DataSource.SHOPIFY) ops = due(now, account, SHOPIFY_BATCH);
+            nextAt = ops.isEmpty() ? nextDue(account) : 0L;
+        } catch (Throwable t) {
+            Logx.w(TAG, "outbox read failed: " + t);
+            return;
+        }
+        if (ops.isEmpty()) {
+            if (nextAt > 0) schedule(Math.max(0L, nextAt - now)); // everything left is backing off
+            return;
+        }
+        if (!online()) { watchNetwork(); return; }
+
+        List<Op> batch = ops;
+        for (Op op : batch) sending.add(op.id);
+        main.post(() -> {
+            for (Op op : batch) send(op, new Sending(op));
+        });
+    }
+
+    /**
+     * Completion of one send, settled once on main by whichever comes first: the provider callback
+     * or {@link #SEND_TIMEOUT_MS}. A success arriving after the timeout still removes the op.
+     */
+    private final class Sending implements Done, Runnable {
+        private final Op op;
+        private boolean settled;
+        private boolean timedOut;
+
+        Sending(Op op) {
+            this.op = op;
+            main.postDelayed(this, SEND_TIMEOUT_MS);
+        }
+
+        @Override public void run() {
+            done(new TimeoutException("No provider response in " + SEND_TIMEOUT_MS / 1000 + "s"));
+            timedOut = true;
+        }
+
+        @Override public void done(@Nullable Exception err) {
+            if (settled) {
+                if (timedOut && err == null) {
+                    timedOut = false;
+                    WRITER.execute(() -> {
+                        if (!sending.contains(op.id)) sent(op, null); // landed late; unless it is being retried
+                    });
+                }
+                return;
+            }
+            settled = true;
+            main.removeCallbacks(this);
+            WRITER.execute(() -> {
+                if (!sending.remove(op.id)) return; // wiped meanwhile
+                sent(op, err);
+                if (sending.isEmpty()) drain();
+            });
+        }
+    }
+
+    private interface Done {
+        void done(@Nullable Exception err);
+    }
+
+    /** Main thread: hand the op to the provider repository. */
+    private void send(Op op, Done done) {
+        InventoryRepository remote;
+        try {
+            remote = ProviderFactory.getRemote(app);
+        } catch (Throwable t) {
+            done.done(t instanceof Exception ? (Exception) t : new RuntimeException(t));
+            return;
+        }
+        if (op.ds != ProviderFactory.source(app)) {
+            done.done(new IllegalStateException("Signed in to another provider."));
+            return;
+        }
+        if (op.ds == DataSource.CLOVER) {
+            if (!(remote instanceof CloverRepository)) { done.done(new IllegalStateException("Clover repo not available.")); return; }
+            Product target = new Product();
+            target.setExternalId(op.externalId);
+            target.setCurrentStock(op.qty); // Clover sets the absolute qty from the product
+            ((CloverRepository) remote).updateStock(app, target, new InventoryRepository.Callback<Boolean>() {
+                @Override public void onSuccess(Boolean ok) { done.done(null); }
+                @Override public void onError(Exception e) { done.done(e); }
+            });
+            return;
+        }
+        remote.updateStock(app, op.targetId, op.locationId, op.qty, op.expected, new InventoryRepository.Callback<Product>() {
+            @Override public void onSuccess(Product result) { done.done(null); }
+            @Override public void onError(Exception e) { done.done(e); }
+        });
+    }
+
+    private void sent(Op op, @Nullable Exception err) {
+        String k = key(op.ds.name(), op.rowKey);
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            if (err == null) {
+                db.delete("ops", "_id=?", new String[]{String.valueOf(op.id)});
+                Logx.d(TAG, "synced " + k + " -> " + op.qty);
+            } else if (err instanceof StockConflictException && op.unsure != null) {
+                // The provider may hold what a timed-out send set: compare against that instead, once.
+                ContentValues cv = new ContentValues();
+                cv.put("expected_qty", op.unsure);
+                cv.putNull("unsure_qty");
+                cv.put("next_at", 0L);
+                db.update("ops", cv, "_id=?", new String[]{String.valueOf(op.id)});
+                Logx.w(TAG, "conflict after a timed-out send for " + k + "; comparing against " + op.unsure);
+            } else {
+                int attempts = op.attempts + 1;
+                ContentValues cv = new ContentValues();
+                cv.put("attempts", attempts);
+                cv.put("last_error", String.valueOf(err.getMessage()));
+                if (err instanceof TimeoutException) cv.put("unsure_qty", op.qty);
+                // A conflict will not heal by retrying: the product needs a fresh count.
+                if (attempts >= MAX_ATTEMPTS || err instanceof StockConflictException) cv.put("failed", 1);
+                else cv.put("next_at", System.currentTimeMillis() + backoff(attempts));
+                db.update("ops", cv, "_id=?", new String[]{String.valueOf(op.id)}); // no-op if superseded
+                Logx.w(TAG, "send failed (" + attempts + ") for " + k + ": " + err);
+            }
+            refreshStatus(db, op);
+        } catch (Throwable t) {
+            Logx.w(TAG, "outbox update failed: " + t);
+        }
+        changed();
+    }
+
+    /**
+     * Oldest {@code limit} ops of {@code account} that are due (enqueue keeps one op per product,
+     * so this is per product too; an account is one provider).
+     */
+    private List<Op> due(long now, String account, int limit) {
+        Cursor c = getReadableDatabase().rawQuery(
+                "SELECT * FROM ops WHERE account=? AND failed=0 AND next_at<=? ORDER BY _id LIMIT " + limit,
+                new String[]{account, String.valueOf(now)});
+        try {
+            List<Op> out = new ArrayList<>();
+            while (c.moveToNext()) out.add(read(c));
+            return out;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static Op read(Cursor c) {
+        Op op = new Op();
+        op.id = c.getLong(c.getColumnIndexOrThrow("_id"));
+        op.account = c.getString(c.getColumnIndexOrThrow("account"));
+        op.ds = DataSource.valueOf(c.getString(c.getColumnIndexOrThrow("provider")));
+        op.rowKey = c.getString(c.getColumnIndexOrThrow("row_key"));
+        op.targetId = c.getLong(c.getColumnIndexOrThrow("target_id"));
+        op.locationId = c.getInt(c.getColumnIndexOrThrow("location_id"));
+        op.externalId = c.getString(c.getColumnIndexOrThrow("external_id"));
+        op.qty = c.getDouble(c.getColumnIndexOrThrow("qty"));
+        int iExp = c.getColumnIndexOrThrow("expected_qty");
+        op.expected = c.isNull(iExp) ? null : c.getDouble(iExp);
+        int iUnsure = c.getColumnIndexOrThrow("unsure_qty");
+        op.unsure = c.isNull(iUnsure) ? null : c.getDouble(iUnsure);
+        op.attempts = c.getInt(c.getColumnIndexOrThrow("attempts"));
+        return op;
+    }
+
+    /** When the earliest backing-off op of {@code account} becomes due; 0 = nothing queued. */
+    private long nextDue(String account) {
+        Cursor c = getReadableDatabase().rawQuery("SELECT MIN(next_at) FROM ops WHERE account=? AND failed=0",
+                new String[]{account});
+        try {
+            return c.moveToFirst() && !c.isNull(0) ? c.getLong(0) : 0L;
+        } finally {
+            c.close();
+        }
+    }
+
+    /** Rebuild the in-memory status map from {@code account}'s journal (once per sign-in). */
+    private void load(String account) {
+        loaded = true;
+        try {
+            Cursor c = getReadableDatabase().rawQuery("SELECT provider, row_key, MIN(failed) FROM ops WHERE account=?"
+                    + " GROUP BY provider, row_key", new String[]{account});
+            try {
+                while (c.moveToNext()) {
+                    status.put(key(c.getString(0), c.getString(1)), c.getInt(2) == 0 ? Status.PENDING : Status.FAILED);
+                }
+            } finally {
+                c.close();
+            }
+        } catch (Throwable t) {
+            Logx.w(TAG, "outbox load failed: " + t);
+        }
+        changed();
+    }
+
+    private void refreshStatus(SQLiteDatabase db, Op op) {
+        Cursor c = db.rawQuery("SELECT MIN(failed) FROM ops WHERE account=? AND provider=? AND row_key=?",
+                new String[]{op.account, op.ds.name(), op.rowKey});
+        try {
+            String k = key(op.ds.name(), op.rowKey);
+            if (!c.moveToFirst() || c.isNull(0)) status.remove(k);
+            else status.put(k, c.getInt(0) == 0 ? Status.PENDING : Status.FAILED);
+        } finally {
+            c.close();
+        }
+    }
+
+    // ============================================================================================
+    // Scheduling
+    // ============================================================================================
+
+    private static long backoff(int attempts) {
+        long ms = RETRY_BASE_MS << Math.min(attempts - 1, 10);
+        return Math.min(ms, RETRY_CAP_MS);
+    }
+
+    private void schedule(long delayMs) {
+        main.removeCallbacks(retry);
+        main.postDelayed(retry, delayMs);
+    }
+
+    private boolean online() {
+        ConnectivityManager cm = (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return true; // can't tell: just try
+        NetworkCapabilities caps = cm.getNetworkCapabilities(cm.getActiveNetwork());
+        return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    /** Replay as soon as a network comes up; the callback is dropped once it has fired (or on sign-out). */
+    private void watchNetwork() {
+        if (watcher != null) return;
+        ConnectivityManager cm = (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) { schedule(RETRY_BASE_MS); return; }
+        ConnectivityManager.NetworkCallback cb = new ConnectivityManager.NetworkCallback() {
+            @Override public void onAvailable(@NonNull Network network) {
+                WRITER.execute(() -> {
+                    unwatchNetwork(); // drain registers again if still offline
+                    drain();
+                });
+            }
+        };
+        try {
+            cm.registerDefaultNetworkCallback(cb);
+            watcher = cb;
+        } catch (RuntimeException e) { // e.g. too many callbacks registered
+            Logx.w(TAG, "network watch failed: " + e);
+            schedule(RETRY_BASE_MS);
+        }
+    }
+
+    private void unwatchNetwork() {
+        ConnectivityManager.NetworkCallback cb = watcher;
+        if (cb == null) return;
+        watcher = null;
+        ConnectivityManager cm = (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE);
+        try {
+            if (cm != null) cm.unregisterNetworkCallback(cb);
+        } catch (RuntimeException e) { // already unregistered
+            Logx.w(TAG, "network unwatch failed: " + e);
+        }
+    }
+
+    private void changed() {
+        main.post(() -> {
+            for (Listener l : listeners) l.onOutboxChanged();
+        });
+    }
+
+    private static String key(String provider, String rowKey) {
+        return provider + '|' + rowKey;
+    }
+}
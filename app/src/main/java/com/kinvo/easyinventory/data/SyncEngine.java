@@ -0,0 +1,119 @@
+package com.kinvo.easyinventory.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.Logx;
+import com.kinvo.easyinventory.SecurePrefs;
+import com.kinvo.easyinventory.model.Product;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental catalog sync driven by {@link InventoryRepository#fetchRecentUpdates}.
+ * Per provider + location the {@link CatalogStore} keeps a high-water mark = newest provider
+ * updated-at merged so far. A sync asks only for products changed since that mark, merges them,
+ * and moves the mark forward in the same transaction. A sync from 0 is the initial full seed.
+ * Providers that page (PagedCallback) have each page merged as it arrives, so a large change set
+ * is never held twice. Counts still waiting in the {@link StockOutbox} are kept over the provider's
+ * quantity. EPOS has no modified-since filter (every sync reads the full listing, see
+ * {@link InventoryRepository#fetchRecentUpdates}), so after its seed it syncs at most every
+ * {@link #FULL_DIFF_INTERVAL_MS}. One sync per provider/location at a time; a failed run leaves
+ * the mark where it was.
+ */
+public final class SyncEngine {
+
+    private static final String TAG = "SyncEngine";
+
+    /** Minimum spacing of full-diff syncs (EPOS): each one downloads the whole stock listing. */
+    private static final long FULL_DIFF_INTERVAL_MS = 15 * 60_000L;
+
+    private static final Set<String> RUNNING = ConcurrentHashMap.newKeySet();
+    /** provider:scope -> when its last full-diff sync succeeded (this process). */
+    private static final Map<String, Long> LAST_FULL_DIFF = new ConcurrentHashMap<>();
+
+    private SyncEngine() {}
+
+    /** Sync the provider/location of the current login. {@code cb} gets the number of changed rows. */
+    public static void syncActive(@NonNull Context ctx, @Nullable InventoryRepository.Callback<Integer> cb) {
+        InventoryRepository repo = ProviderFactory.get(ctx);
+        if (!(repo instanceof CatalogRepository)) return;
+        CatalogRepository catalog = (CatalogRepository) repo;
+        int locationId = 0;
+        try { locationId = SecurePrefs.get(ctx).getLocationId(); } catch (Throwable ignored) {}
+        sync(ctx, catalog.source(), catalog.remote(), locationId, cb);
+    }
+
+    public static void sync(@NonNull Context ctx, @NonNull DataSource ds, @NonNull InventoryRepository remote,
+                            int locationId, @Nullable InventoryRepository.Callback<Integer> cb) {
+        if (ds == DataSource.EPOSNOW && locationId <= 0) return; // EPOS needs a location
+        long scope = CatalogRepository.scopeOf(ds, locationId);
+        String key = ds + ":" + scope;
+        if (!RUNNING.add(key)) return; // already syncing; that run will cover this request
+
+        CatalogStore store = CatalogStore.get(ctx);
+        StockOutbox outbox = StockOutbox.get(ctx);
+        long startedAt = System.currentTimeMillis();
+        ParseStage.run("sync.watermark", 0, () -> store.watermark(ds, scope), new InventoryRepository.Callback<Long>() {
+            @Override public void onSuccess(Long since) {
+                boolean fullDiff = ds == DataSource.EPOSNOW;
+                Long last = LAST_FULL_DIFF.get(key);
+                if (fullDiff && since > 0 && last != null && startedAt - last < FULL_DIFF_INTERVAL_MS) {
+                    done(key, cb, 0); // synced a moment ago; the seed (since == 0) is never held back
+                    return;
+                }
+                remote.fetchRecentUpdates(ctx, locationId, since, 0, new InventoryRepository.PagedCallback<List<Product>>() {
+                    private int streamed; // rows already merged page by page
+                    private long mark;
+
+                    @Override public void onPage(List<Product> page) {
+                        if (page == null || page.isEmpty()) return;
+                        streamed += page.size();
+                        mark = Math.max(mark, CatalogStore.newest(page));
+                        // Rows land as they arrive; the mark only moves once the whole set is in.
+                        store.write(() -> store.merge(ds, scope, outbox.keepPending(ds, page), 0L, false));
+                    }
+
+                    @Override public void onSuccess(List<Product> changed) {
+                        List<Product> rest = streamed > 0 || changed == null
+                                ? Collections.<Product>emptyList() : changed;
+                        int n = streamed > 0 ? streamed : rest.size();
+                        if (fullDiff) LAST_FULL_DIFF.put(key, startedAt); // a clean read counts too
+                        if (n == 0) { done(key, cb, 0); return; }
+                        long found = Math.max(mark, CatalogStore.newest(rest));
+                        // Providers without timestamps (EPOS) just need a non-zero "synced once" mark.
+                        long newest = found > 0 ? found : startedAt;
+                        boolean seeded = since == 0L;
+                        store.write(() -> {
+                            try {
+                                store.merge(ds, scope, outbox.keepPending(ds, rest), newest, seeded);
+                                Logx.d(TAG, key + ": merged " + n + " since " + since + " -> mark " + newest);
+                            } finally {
+                                done(key, cb, n); // only after the mark is persisted
+                            }
+                        });
+                    }
+                    @Override public void onError(Exception e) { failed(key, cb, e); }
+                });
+            }
+            @Override public void onError(Exception e) { failed(key, cb, e); }
+        });
+    }
+
+    private static void done(String key, @Nullable InventoryRepository.Callback<Integer> cb, int changed) {
+        RUNNING.remove(key);
+        if (cb != null) ParseStage.deliver(cb, changed);
+    }
+
+    private static void failed(String key, @Nullable InventoryRepository.Callback<Integer> cb, Exception e) {
+        RUNNING.remove(key);
+        Logx.w(TAG, "sync " + key + " failed: " + e);
+        if (cb != null) cb.onError(e);
+    }
+}
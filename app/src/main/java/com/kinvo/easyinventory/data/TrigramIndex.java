@@ -0,0 +1,195 @@
+package com.kinvo.easyinventory.data;
+
+import androidx.annotation.NonNull;
+
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.FuzzyMatch;
+import com.kinvo.easyinventory.util.SearchText;
+import com.kinvo.easyinventory.util.TopK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Trigram inverted index over the normalized search key (description + sku + barcode) of one
+ * catalog partition. Each distinct 3-char window of a key maps to the ascending list of documents
+ * containing it, so a substring query touches only the documents sharing ALL of its trigrams:
+ * posting lists are intersected smallest-first (galloping), then the few survivors are verified
+ * with a real contains(). Tokens are ANDed, each matched anywhere in the key.
+ * When that finds fewer than {@link #TYPO_PASS_BELOW} products, documents sharing a trigram with
+ * every token are scored with {@link FuzzyMatch} so misspellings ("choclate") still find their
+ * product; a query with enough real hits never pays for it. Results are
+ * ranked best first through a bounded {@link TopK} heap.
+ * Documents are append-only; a replaced product is tombstoned and the owner rebuilds the index
+ * once {@link #needsCompaction()}. Not thread-safe; {@link BarcodeIndex} guards it.
+ */
+final class TrigramIndex {
+
+    private static final int TYPO_PASS_BELOW = 5; // exact hits under which typos are looked for
+
+    private final List<Product> docs = new ArrayList<>();  // doc id -> product (null = deleted)
+    private final List<String> keys = new ArrayList<>();   // doc id -> normalized key
+    private final HashMap<Long, Postings> postings = new HashMap<>();
+    private int deleted;
+
+    /** Index {@code p}; returns its document id. */
+    int add(@NonNull Product p) {
+        int id = docs.size();
+        String key = p.getSearchKey();
+        docs.add(p);
+        keys.add(key);
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            long g = gram(key, i);
+            if (!seen.add(g)) continue;
+            Postings list = postings.get(g);
+            if (list == null) { list = new Postings(); postings.put(g, list); }
+            list.add(id);
+        }
+        return id;
+    }
+
+    void remove(int id) {
+        if (id < 0 || id >= docs.size() || docs.get(id) == null) return;
+        docs.set(id, null);
+        keys.set(id, null);
+        deleted++;
+    }
+
+    /** More than a quarter of the documents are tombstones: rebuild to keep postings tight. */
+    boolean needsCompaction() {
+        return deleted > 256 && deleted * 4 > docs.size();
+    }
+
+    /**
+     * The best {@code limit} (<= 0 = all) products for {@code tokens} (from {@link SearchText#tokens}),
+     * best first. Substring matches of every token come before typo matches. Tokens shorter than
+     * 3 chars add no trigrams and are only checked during verification; a query of only such tokens
+     * scans the keys.
+     */
+    @NonNull
+    List<Product> search(@NonNull String[] tokens, int limit) {
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+        TopK<Product> top = new TopK<>(max);
+        if (tokens.length == 0) return top.drain();
+
+        int[] candidates = candidates(tokens);
+        if (candidates == null) { // nothing to intersect on: verify every live key
+            for (int id = 0; id < docs.size(); id++) {
+                if (matches(id, tokens)) top.offer(docs.get(id), FuzzyMatch.score(tokens, keys.get(id)));
+            }
+            return top.drain();
+        }
+        int exact = 0;
+        for (int id : candidates) {
+            if (!matches(id, tokens)) continue;
+            top.offer(docs.get(id), FuzzyMatch.score(tokens, keys.get(id)));
+            exact++;
+        }
+        if (exact < Math.min(max, TYPO_PASS_BELOW)) fuzzy(tokens, top);
+        return top.drain();
+    }
+
+    int size() { return docs.size() - deleted; }
+
+    // ---- internals ----
+
+    /** Intersection of the posting lists of every trigram of every token; null = no trigram at all. */
+    private int[] candidates(String[] tokens) {
+        List<Postings> lists = new ArrayList<>();
+        Set<Long> grams = new HashSet<>();
+        for (String t : tokens) {
+            for (int i = 0; i + 3 <= t.length(); i++) {
+                long g = gram(t, i);
+                if (!grams.add(g)) continue;
+                Postings p = postings.get(g);
+                if (p == null) return new int[0]; // a trigram nobody has: no match
+                lists.add(p);
+            }
+        }
+        if (lists.isEmpty()) return null;
+
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] acc = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int n = acc.length;
+        for (int l = 1; l < lists.size() && n > 0; l++) {
+            n = intersect(acc, n, lists.get(l));
+        }
+        return n == acc.length ? acc : Arrays.copyOf(acc, n);
+    }
+
+    /** Keep in acc[0..n) only ids present in {@code list}; galloping search into the longer list. */
+    private static int intersect(int[] acc, int n, Postings list) {
+        int[] ids = list.ids;
+        int size = list.size;
+        int out = 0, lo = 0;
+        for (int i = 0; i < n && lo < size; i++) {
+            int want = acc[i];
+            int step = 1, hi = lo;
+            while (hi < size && ids[hi] < want) { lo = hi + 1; hi += step; step <<= 1; }
+            int found = Arrays.binarySearch(ids, lo, Math.min(hi + 1, size), want);
+            if (found >= 0) { acc[out++] = want; lo = found + 1; }
+            else lo = -found - 1;
+        }
+        return out;
+    }
+
+    /**
+     * Typo pass: a document is a candidate when it shares at least one trigram with every token
+     * that has trigrams, then it is scored (substring matches were already offered and are skipped).
+     * Only ids found in the postings are touched, narrowed token by token.
+     */
+    private void fuzzy(String[] tokens, TopK<Product> top) {
+        Set<Integer> alive = null; // docs sharing a trigram with every token so far
+        for (String t : tokens) {
+            if (t.length() < 3 || FuzzyMatch.maxEdits(t.length()) == 0) continue;
+            Set<Integer> hit = new HashSet<>();
+            for (int i = 0; i + 3 <= t.length(); i++) {
+                Postings p = postings.get(gram(t, i));
+                if (p == null) continue;
+                for (int k = 0; k < p.size; k++) {
+                    int id = p.ids[k];
+                    if (alive == null || alive.contains(id)) hit.add(id);
+                }
+            }
+            if (hit.isEmpty()) return;
+            alive = hit;
+        }
+        if (alive == null) return;
+        int[] ids = new int[alive.size()];
+        int n = 0;
+        for (int id : alive) ids[n++] = id;
+        Arrays.sort(ids); // doc order, so ties rank as they do on the exact path
+        for (int id : ids) {
+            if (keys.get(id) == null || matches(id, tokens)) continue;
+            double s = FuzzyMatch.score(tokens, keys.get(id));
+            if (s != FuzzyMatch.NO_MATCH) top.offer(docs.get(id), s);
+        }
+    }
+
+    private boolean matches(int id, String[] tokens) {
+        String key = keys.get(id);
+        if (key == null) return false;
+        for (String t : tokens) if (!key.contains(t)) return false;
+        return true;
+    }
+
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /** Growable ascending int list (ids are appended in increasing order). */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+}
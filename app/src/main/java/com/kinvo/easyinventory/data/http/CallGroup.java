@@ -0,0 +1,61 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks in-flight calls so a whole family can be cancelled at once (e.g. the requests of a
+ * search the user has already typed past). Calls enqueued through {@link #over} are registered
+ * until they complete; {@link #cancelAll()} cancels whatever is still running. Cancelled calls
+ * never deliver. Thread-safe.
+ */
+public final class CallGroup {
+
+    private final Set<Tracked> calls = ConcurrentHashMap.newKeySet();
+
+    /** A transport view whose calls belong to this group. */
+    @NonNull
+    public HttpTransport over(@NonNull HttpTransport delegate) {
+        return new HttpTransport() {
+            @NonNull @Override
+            public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse,
+                                @NonNull OnFailure onFailure) {
+                Tracked t = new Tracked();
+                calls.add(t);
+                t.call = delegate.enqueue(request,
+                        resp -> { calls.remove(t); onResponse.onResponse(resp); },
+                        err -> { calls.remove(t); onFailure.onFailure(err); });
+                if (t.cancelled) t.cancel(); // cancelAll() raced the enqueue
+                return t;
+            }
+
+            @Override public void shutdown() { delegate.shutdown(); }
+        };
+    }
+
+    /** Cancel every call of this group that is still in flight. */
+    public void cancelAll() {
+        List<Tracked> running = new ArrayList<>(calls);
+        calls.clear();
+        for (Tracked t : running) t.cancel();
+    }
+
+    public int size() { return calls.size(); }
+
+    private final class Tracked implements HttpTransport.Call {
+        @Nullable volatile HttpTransport.Call call;
+        volatile boolean cancelled;
+
+        @Override public void cancel() {
+            cancelled = true;
+            calls.remove(this);
+            HttpTransport.Call c = call;
+            if (c != null) c.cancel();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Consecutive-failure circuit breaker for one provider.
+ * CLOSED: calls pass; {@code threshold} failures in a row open it.
+ * OPEN: calls fail fast with {@link OpenException} until the cool-down ends.
+ * HALF_OPEN: one probe call passes; its outcome closes the breaker or re-opens it with a
+ * doubled cool-down (capped). Thread-safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Thrown (delivered through onFailure) instead of calling a provider that is down. */
+    public static final class OpenException extends IOException {
+        public final long retryAtMs;
+
+        OpenException(String name, long retryAtMs) {
+            super(name + " is unavailable, retrying after " + Math.max(0L, retryAtMs - System.currentTimeMillis()) + "ms");
+            this.retryAtMs = retryAtMs;
+        }
+    }
+
+    private final String name;
+    private final int threshold;
+    private final long baseOpenMs;
+    private final long maxOpenMs;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openMs;
+    private long openUntil;
+    private boolean probing;
+
+    public CircuitBreaker(@NonNull String name, int threshold, long openMs, long maxOpenMs) {
+        this.name = name;
+        this.threshold = Math.max(1, threshold);
+        this.baseOpenMs = openMs;
+        this.maxOpenMs = Math.max(openMs, maxOpenMs);
+        this.openMs = openMs;
+    }
+
+    /** Null if the call may go ahead (and is then counted), else the exception to fail with. */
+    synchronized OpenException tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openUntil) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        switch (state) {
+            case OPEN:
+                return new OpenException(name, openUntil);
+            case HALF_OPEN:
+                if (probing) return new OpenException(name, now + 1000L);
+                probing = true;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /** The provider answered (any response that isn't an outage signal). */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+        openMs = baseOpenMs;
+    }
+
+    /** Outage signal: I/O failure, 5xx, or 429 after backoff ran out. */
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            openMs = Math.min(maxOpenMs, openMs * 2);
+            open();
+            return;
+        }
+        if (++failures >= threshold) open();
+    }
+
+    /** A passed probe that ended without an outcome (cancelled): let the next call probe. */
+    synchronized void onAbandoned() {
+        probing = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        probing = false;
+        failures = 0;
+        openUntil = System.currentTimeMillis() + openMs;
+    }
+
+    @NonNull
+    public synchronized State state() { return state; }
+
+    @NonNull
+    public String name() { return name; }
+}
@@ -0,0 +1,288 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Disk-backed conditional-request cache in front of another {@link HttpTransport}.
+ * For cacheable GETs (see the predicate) a stored ETag / Last-Modified is sent as
+ * If-None-Match / If-Modified-Since; a 304 is answered from disk as the stored 200. Only the
+ * entity headers are stored (so Link cursors keep working); the 304's own headers are laid over
+ * them, so per-response ones (rate-limit counters, Date, Retry-After) are always current.
+ * Fresh 200s carrying a validator are stored.
+ * One file per URL + auth headers; total size is capped and least-recently-used entries are
+ * evicted. Disk work runs on its own thread, never on the caller's. After {@link #shutdown} or
+ * {@link #wipe} nothing that was still queued reaches the disk.
+ */
+public final class ConditionalCache implements HttpTransport {
+
+    private static final int VERSION = 2; // 1 stored every response header
+    private static final String TMP = ".tmp";
+
+    /** Bumped by {@link #wipe}: stores queued before it are dropped, indexes are rebuilt. */
+    private static final AtomicInteger WIPES = new AtomicInteger();
+    private static final String SUFFIX = ".http";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    /** Headers that describe the body rather than the exchange; the only ones stored. */
+    private static final Set<String> ENTITY_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        Collections.addAll(ENTITY_HEADERS, "Content-Type", "Content-Language", "ETag", "Last-Modified", "Link");
+    }
+
+    private final HttpTransport delegate;
+    private final File dir;
+    private final long maxBytes;
+    private final Predicate<HttpRequest> cacheable;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "http-cache");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile boolean closed;
+
+    /** key -> file size, in access order (eldest = least recently used). Guarded by this. */
+    private LinkedHashMap<String, Long> lru;
+    private int lruWipes; // WIPES when lru was built
+    private long totalBytes;
+
+    public ConditionalCache(@NonNull HttpTransport delegate, @NonNull File dir, long maxBytes,
+                            @NonNull Predicate<HttpRequest> cacheable) {
+        this.delegate = delegate;
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.cacheable = cacheable;
+    }
+
+    /** Delete every stored entry under {@code dir}, half-written ones included (logout). */
+    public static void wipe(@NonNull File dir) {
+        WIPES.incrementAndGet();
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String name = f.getName();
+            if ((name.endsWith(SUFFIX) || name.endsWith(TMP)) && !f.delete()) f.deleteOnExit();
+        }
+    }
+
+    @NonNull @Override
+    public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse, @NonNull OnFailure onFailure) {
+        if (!request.isGet() || !cacheable.test(request)) return delegate.enqueue(request, onResponse, onFailure);
+
+        Pending p = new Pending();
+        // A retried request still carries the validators of its previous attempt.
+        request.headers.remove(IF_NONE_MATCH);
+        request.headers.remove(IF_MODIFIED_SINCE);
+        String key = request.fingerprint(); // credentials included: two logins never share an entry
+        int epoch = WIPES.get();
+        boolean queued = runIo(() -> {
+            if (p.cancelled || closed) return;
+            Entry cached = read(key);
+            if (cached != null) {
+                if (cached.etag != null) request.header(IF_NONE_MATCH, cached.etag);
+                if (cached.lastModified != null) request.header(IF_MODIFIED_SINCE, cached.lastModified);
+            }
+            p.call = delegate.enqueue(request,
+                    resp -> {
+                        if (resp.code == 304 && cached != null) { onResponse.onResponse(cached.asResponse(resp)); return; }
+                        onResponse.onResponse(resp);
+                        if (resp.code == 200) runIo(() -> store(key, resp, epoch));
+                    },
+                    err -> {
+                        HttpResponse failed = err instanceof HttpException ? ((HttpException) err).response : null;
+                        if (failed != null && failed.code == 304 && cached != null) onResponse.onResponse(cached.asResponse(failed));
+                        else onFailure.onFailure(err);
+                    });
+            if (p.cancelled) p.call.cancel();
+        });
+        return queued ? p : delegate.enqueue(request, onResponse, onFailure);
+    }
+
+    /** False once the cache has been shut down (the stack is being replaced). */
+    private boolean runIo(Runnable r) {
+        try {
+            io.execute(r);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        closed = true;
+        delegate.shutdown();
+        io.shutdownNow(); // queued reads/stores are dropped; a running one checks closed
+    }
+
+    private static final class Pending implements Call {
+        volatile boolean cancelled;
+        @Nullable volatile Call call;
+
+        @Override public void cancel() {
+            cancelled = true;
+            Call c = call;
+            if (c != null) c.cancel();
+        }
+    }
+
+    // ============================================================================================
+    // Entries
+    // ============================================================================================
+
+    private static final class Entry {
+        @Nullable String etag;
+        @Nullable String lastModified;
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        byte[] body;
+
+        /** The stored 200, with the headers of the 304 that revalidated it laid over the stored ones. */
+        HttpResponse asResponse(HttpResponse notModified) {
+            Map<String, List<String>> h = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            h.putAll(headers);
+            for (Map.Entry<String, List<String>> e : notModified.allHeaders().entrySet()) {
+                if (!"Content-Length".equalsIgnoreCase(e.getKey())) h.put(e.getKey(), e.getValue()); // 304 has no body
+            }
+            return new HttpResponse(200, h, body);
+        }
+    }
+
+    @Nullable
+    private Entry read(String key) {
+        File f = new File(dir, key + SUFFIX);
+        if (!f.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != VERSION) throw new IOException("old cache entry");
+            Entry e = new Entry();
+            e.etag = optUtf(in);
+            e.lastModified = optUtf(in);
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                List<String> l = e.headers.get(name);
+                if (l == null) { l = new ArrayList<>(); e.headers.put(name, l); }
+                l.add(value);
+            }
+            e.body = new byte[in.readInt()];
+            in.readFully(e.body);
+            touch(key, f);
+            return e;
+        } catch (IOException ex) {
+            remove(key, f);
+            return null;
+        }
+    }
+
+    private void store(String key, HttpResponse resp, int epoch) {
+        if (closed || epoch != WIPES.get()) return; // stack replaced / logged out since the request
+        String etag = resp.header("ETag");
+        String lastModified = resp.header("Last-Modified");
+        if (etag == null && lastModified == null) return; // nothing to revalidate with
+        if (resp.body.length > maxBytes / 4) return;       // one page must not flush the cache
+
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        File tmp = new File(dir, key + TMP);
+        File f = new File(dir, key + SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            writeOptUtf(out, etag);
+            writeOptUtf(out, lastModified);
+            List<String[]> hs = new ArrayList<>();
+            for (Map.Entry<String, List<String>> h : resp.allHeaders().entrySet()) {
+                if (!ENTITY_HEADERS.contains(h.getKey())) continue;
+                for (String v : h.getValue()) if (v != null) hs.add(new String[] { h.getKey(), v });
+            }
+            out.writeInt(hs.size());
+            for (String[] h : hs) { out.writeUTF(h[0]); out.writeUTF(h[1]); }
+            out.writeInt(resp.body.length);
+            out.write(resp.body);
+        } catch (IOException e) {
+            if (!tmp.delete()) tmp.deleteOnExit();
+            return;
+        }
+        if (closed || epoch != WIPES.get() || !tmp.renameTo(f)) { if (!tmp.delete()) tmp.deleteOnExit(); return; }
+        touch(key, f);
+        evict();
+    }
+
+    // ============================================================================================
+    // LRU bookkeeping
+    // ============================================================================================
+
+    private synchronized LinkedHashMap<String, Long> lru() {
+        if (lru != null && lruWipes == WIPES.get()) return lru;
+        lruWipes = WIPES.get();
+        lru = new LinkedHashMap<>(64, 0.75f, true);
+        totalBytes = 0;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            List<File> byAge = new ArrayList<>(Arrays.asList(files));
+            Collections.sort(byAge, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (File f : byAge) {
+                String name = f.getName();
+                lru.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+                totalBytes += f.length();
+            }
+        }
+        return lru;
+    }
+
+    private synchronized void touch(String key, File f) {
+        Long old = lru().put(key, f.length());
+        totalBytes += f.length() - (old != null ? old : 0L);
+        if (!f.setLastModified(System.currentTimeMillis())) { /* order is still kept in memory */ }
+    }
+
+    private synchronized void remove(String key, File f) {
+        Long old = lru().remove(key);
+        if (old != null) totalBytes -= old;
+        if (!f.delete()) f.deleteOnExit();
+    }
+
+    private synchronized void evict() {
+        LinkedHashMap<String, Long> map = lru();
+        while (totalBytes > maxBytes && !map.isEmpty()) {
+            String eldest = map.keySet().iterator().next();
+            remove(eldest, new File(dir, eldest + SUFFIX));
+        }
+    }
+
+    // ============================================================================================
+    // Helpers
+    // ============================================================================================
+
+    @Nullable
+    private static String optUtf(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptUtf(DataOutputStream out, @Nullable String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+}
@@ -0,0 +1,21 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+/** Non-2xx HTTP response. Keeps the response so callers can inspect status/headers/body. */
+public class HttpException extends Exception {
+
+    @NonNull public final HttpResponse response;
+
+    public HttpException(@NonNull HttpResponse response) {
+        super("HTTP " + response.code);
+        this.response = response;
+    }
+
+    public int code() { return response.code; }
+
+    @NonNull @Override
+    public String toString() {
+        return getClass().getSimpleName() + " status=" + response.code + " body=" + response.bodyString();
+    }
+}
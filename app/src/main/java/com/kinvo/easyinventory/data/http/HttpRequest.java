@@ -0,0 +1,94 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.util.Digest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Immutable-ish request description handed to an {@link HttpTransport}. */
+public final class HttpRequest {
+
+    public static final String GET  = "GET";
+    public static final String POST = "POST";
+
+    public final String method;
+    public final String url;
+    public final Map<String, String> headers = new LinkedHashMap<>();
+    @Nullable public final byte[] body;
+    @Nullable public final String contentType;
+
+    private int timeoutMs = 15000;
+    private int maxRetries = 2;
+    @Nullable private Object tag;
+
+    private HttpRequest(String method, String url, @Nullable byte[] body, @Nullable String contentType) {
+        this.method = method;
+        this.url = url;
+        this.body = body;
+        this.contentType = contentType;
+    }
+
+    public static HttpRequest get(@NonNull String url) {
+        return new HttpRequest(GET, url, null, null);
+    }
+
+    public static HttpRequest post(@NonNull String url, @NonNull String body, @NonNull String contentType) {
+        return new HttpRequest(POST, url, body.getBytes(StandardCharsets.UTF_8), contentType);
+    }
+
+    /** Independent copy (headers, timeout, retries, tag), for layers that must not touch the caller's. */
+    @NonNull
+    public HttpRequest copy() {
+        HttpRequest r = new HttpRequest(method, url, body, contentType).headers(headers);
+        r.timeoutMs = timeoutMs;
+        r.maxRetries = maxRetries;
+        r.tag = tag;
+        return r;
+    }
+
+    public HttpRequest headers(@Nullable Map<String, String> h) {
+        if (h != null) headers.putAll(h);
+        return this;
+    }
+
+    public HttpRequest header(@NonNull String name, @NonNull String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /** Whole-call timeout (connect + write + read) per attempt. */
+    public HttpRequest timeoutMs(int ms) { this.timeoutMs = ms; return this; }
+    public int timeoutMs() { return timeoutMs; }
+
+    /**
+     * Extra attempts after a transient failure. Plain transports retry I/O errors only;
+     * {@link ResilientTransport} also retries 429/5xx with backoff (see there for POST rules).
+     */
+    public HttpRequest maxRetries(int n) { this.maxRetries = Math.max(0, n); return this; }
+    public int maxRetries() { return maxRetries; }
+
+    public HttpRequest tag(@Nullable Object t) { this.tag = t; return this; }
+    @Nullable public Object tag() { return tag; }
+
+    public boolean isGet() { return GET.equals(method); }
+
+    /**
+     * Method + URL + every header (credentials included) as a SHA-256 digest: equal only for
+     * requests that may share a response, so two logins never do.
+     */
+    @NonNull
+    public String fingerprint() {
+        StringBuilder sb = new StringBuilder(method).append(' ').append(url);
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            sb.append('\n').append(h.getKey()).append(':').append(h.getValue());
+        }
+        return Digest.sha256Hex(sb.toString());
+    }
+
+    @NonNull @Override
+    public String toString() { return method + " " + url; }
+}
@@ -0,0 +1,89 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/** Fully-read HTTP response (status, headers, body bytes). */
+public final class HttpResponse {
+
+    public final int code;
+    @NonNull public final byte[] body;
+    private final Map<String, List<String>> headers; // case-insensitive keys
+    private volatile boolean shared;
+    private Map<String, Object> decoded; // guarded by this; only used when shared
+
+    public HttpResponse(int code, @Nullable Map<String, List<String>> headers, @Nullable byte[] body) {
+        this.code = code;
+        this.body = body == null ? new byte[0] : body;
+        Map<String, List<String>> h = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+                if (e.getKey() != null) h.put(e.getKey(), e.getValue());
+            }
+        }
+        this.headers = Collections.unmodifiableMap(h);
+    }
+
+    public boolean isSuccessful() { return code >= 200 && code < 300; }
+
+    /** True when {@link SingleFlight} handed this same response to several callers. */
+    public boolean isShared() { return shared; }
+
+    void markShared() { shared = true; }
+
+    /**
+     * Decode once per key and hand every caller the same result (callers must treat it as
+     * read-only). Concurrent callers wait for the first decode rather than repeating it.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T decodeOnce(@NonNull String key, @NonNull Callable<T> decode) throws Exception {
+        if (decoded == null) decoded = new HashMap<>();
+        if (decoded.containsKey(key)) return (T) decoded.get(key);
+        T v = decode.call();
+        decoded.put(key, v);
+        return v;
+    }
+
+    /** First value of a header, or null. */
+    @Nullable
+    public String header(@NonNull String name) {
+        List<String> v = headers.get(name);
+        return (v == null || v.isEmpty()) ? null : v.get(0);
+    }
+
+    @NonNull
+    public List<String> headers(@NonNull String name) {
+        List<String> v = headers.get(name);
+        return v == null ? Collections.emptyList() : v;
+    }
+
+    @NonNull
+    public Map<String, List<String>> allHeaders() { return headers; }
+
+    @NonNull
+    public String bodyString() { return new String(body, StandardCharsets.UTF_8); }
+
+    /** Body as a JSONObject; an empty body (204, etc.) yields an empty object. */
+    @NonNull
+    public JSONObject json() throws JSONException {
+        String s = bodyString().trim();
+        return s.isEmpty() ? new JSONObject() : new JSONObject(s);
+    }
+
+    @NonNull @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "HTTP %d (%d bytes)", code, body.length);
+    }
+}
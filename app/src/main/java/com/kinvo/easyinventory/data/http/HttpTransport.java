@@ -0,0 +1,34 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Pluggable HTTP transport used by the repositories.
+ * Implementations: {@link OkHttpTransport} (default, HTTP/2 + gzip/brotli) and {@link VolleyTransport}.
+ * <p>
+ * Contract: exactly one of the two callbacks fires, on ANY thread (OkHttp: its worker thread,
+ * Volley: main). Callers must not touch UI from them; repositories go through ParseStage,
+ * which decodes off the main thread and posts only the final result back.
+ * Non-2xx responses are reported through onFailure as {@link HttpException}.
+ */
+public interface HttpTransport {
+
+    interface OnResponse {
+        void onResponse(@NonNull HttpResponse response);
+    }
+
+    interface OnFailure {
+        void onFailure(@NonNull Exception error);
+    }
+
+    /** Handle to an in-flight request. Cancelled calls never deliver. */
+    interface Call {
+        void cancel();
+    }
+
+    @NonNull
+    Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse, @NonNull OnFailure onFailure);
+
+    /** Cancel everything in flight and release pooled resources. */
+    void shutdown();
+}
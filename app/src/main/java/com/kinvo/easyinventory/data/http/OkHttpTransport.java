@@ -0,0 +1,173 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.brotli.BrotliInterceptor;
+
+/**
+ * OkHttp transport:
+ * - HTTP/2 (ALPN) so concurrent Shopify/Clover/EPOS calls multiplex over one connection per host,
+ *   HTTP/1.1 keep-alive otherwise.
+ * - Transparent brotli/gzip response decoding (BrotliInterceptor advertises "br,gzip").
+ * - Interceptors are exposed through {@link Builder} (logging, auth, metrics, ...).
+ */
+public final class OkHttpTransport implements HttpTransport {
+
+    private final OkHttpClient client;
+
+    private OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @NonNull
+    public OkHttpClient client() { return client; }
+
+    @NonNull @Override
+    public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse, @NonNull OnFailure onFailure) {
+        Attempt attempt = new Attempt(request, onResponse, onFailure);
+        attempt.start();
+        return attempt;
+    }
+
+    @Override
+    public void shutdown() {
+        client.dispatcher().cancelAll();
+        client.connectionPool().evictAll();
+    }
+
+    // ---- one logical call (with I/O retries) ----
+
+    private final class Attempt implements Call, Callback {
+        private final HttpRequest request;
+        private final OnResponse onResponse;
+        private final OnFailure onFailure;
+        private volatile boolean cancelled;
+        private volatile okhttp3.Call current;
+        private int retriesLeft;
+
+        Attempt(HttpRequest request, OnResponse onResponse, OnFailure onFailure) {
+            this.request = request;
+            this.onResponse = onResponse;
+            this.onFailure = onFailure;
+            this.retriesLeft = request.maxRetries();
+        }
+
+        void start() {
+            if (cancelled) return;
+            okhttp3.Call c = client.newCall(toOkHttp(request));
+            c.timeout().timeout(request.timeoutMs(), TimeUnit.MILLISECONDS);
+            current = c;
+            c.enqueue(this);
+        }
+
+        @Override public void cancel() {
+            cancelled = true;
+            okhttp3.Call c = current;
+            if (c != null) c.cancel();
+        }
+
+        @Override public void onFailure(@NonNull okhttp3.Call call, @NonNull IOException e) {
+            if (cancelled) return;
+            if (retriesLeft-- > 0) { start(); return; }
+            onFailure.onFailure(e);
+        }
+
+        @Override public void onResponse(@NonNull okhttp3.Call call, @NonNull Response response) {
+            HttpResponse out;
+            try (ResponseBody body = response.body()) {
+                byte[] bytes = body != null ? body.bytes() : new byte[0];
+                out = new HttpResponse(response.code(), response.headers().toMultimap(), bytes);
+            } catch (IOException e) {
+                onFailure(call, e);
+                return;
+            }
+            if (cancelled) return;
+            // Delivered on the OkHttp worker thread; callers hop to main themselves (see ParseStage).
+            if (out.isSuccessful()) onResponse.onResponse(out);
+            else onFailure.onFailure(new HttpException(out));
+        }
+    }
+
+    private static Request toOkHttp(HttpRequest r) {
+        Request.Builder b = new Request.Builder().url(r.url);
+        for (java.util.Map.Entry<String, String> h : r.headers.entrySet()) {
+            b.header(h.getKey(), h.getValue());
+        }
+        RequestBody body = null;
+        if (r.body != null) {
+            MediaType type = r.contentType != null ? MediaType.parse(r.contentType) : null;
+            body = RequestBody.create(r.body, type);
+        }
+        b.method(r.method, body);
+        if (r.tag() != null) b.tag(Object.class, r.tag());
+        return b.build();
+    }
+
+    // ============================================================================================
+    // Builder
+    // ============================================================================================
+
+    public static final class Builder {
+        private int maxRequests = 32;
+        private int maxRequestsPerHost = 8;
+        private int maxIdleConnections = 8;
+        private long keepAliveMinutes = 5;
+        private final List<Interceptor> interceptors = new ArrayList<>();
+        private final List<Interceptor> networkInterceptors = new ArrayList<>();
+
+        /** Bounded dispatcher: total concurrent calls and per-host concurrency (HTTP/1.1 only). */
+        public Builder dispatcher(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder connectionPool(int maxIdleConnections, long keepAliveMinutes) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMinutes = keepAliveMinutes;
+            return this;
+        }
+
+        /** Application interceptor (sees each logical call once). */
+        public Builder addInterceptor(@NonNull Interceptor i) { interceptors.add(i); return this; }
+
+        /** Network interceptor (sees every wire request, incl. redirects). */
+        public Builder addNetworkInterceptor(@NonNull Interceptor i) { networkInterceptors.add(i); return this; }
+
+        public OkHttpTransport build() {
+            Dispatcher d = new Dispatcher();
+            d.setMaxRequests(maxRequests);
+            d.setMaxRequestsPerHost(maxRequestsPerHost);
+
+            OkHttpClient.Builder b = new OkHttpClient.Builder()
+                    .dispatcher(d)
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES))
+                    .protocols(java.util.Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .retryOnConnectionFailure(true)
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(20, TimeUnit.SECONDS)
+                    .writeTimeout(20, TimeUnit.SECONDS);
+            for (Interceptor i : interceptors) b.addInterceptor(i);
+            // Brotli last among app interceptors so it sits closest to the network.
+            b.addInterceptor(BrotliInterceptor.INSTANCE);
+            for (Interceptor i : networkInterceptors) b.addNetworkInterceptor(i);
+            return new OkHttpTransport(b.build());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry + circuit-breaker decorator over another {@link HttpTransport}.
+ * - Retries up to {@link HttpRequest#maxRetries()} times with full-jitter exponential backoff
+ *   (random in [0, min(cap, base * 2^n)]); a Retry-After header sets the floor of the wait, and
+ *   one longer than {@link #MAX_RETRY_AFTER_MS} fails straight away.
+ * - GETs retry on I/O errors, 5xx and 429. POSTs (stock writes) only retry when the request cannot
+ *   have been applied: 429/503 or a connection that was never made.
+ * - Every attempt first asks the provider's {@link CircuitBreaker}; while it is open the call fails
+ *   fast with {@link CircuitBreaker.OpenException} so callers can serve local data instead.
+ * The delegate is called with maxRetries 0 so retries are not compounded underneath.
+ */
+public final class ResilientTransport implements HttpTransport {
+
+    private static final long BASE_BACKOFF_MS = 250L;
+    private static final long MAX_BACKOFF_MS = 4000L;
+    private static final long MAX_RETRY_AFTER_MS = 30_000L;
+
+    private static ScheduledExecutorService timer;
+
+    private static synchronized ScheduledExecutorService timer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "http-backoff");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+
+    private final HttpTransport delegate;
+    private final CircuitBreaker breaker;
+
+    public ResilientTransport(@NonNull HttpTransport delegate, @NonNull CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @NonNull
+    public CircuitBreaker breaker() { return breaker; }
+
+    @NonNull @Override
+    public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse, @NonNull OnFailure onFailure) {
+        Attempt a = new Attempt(request, onResponse, onFailure);
+        a.start();
+        return a;
+    }
+
+    @Override
+    public void shutdown() { delegate.shutdown(); }
+
+    // ---- one logical call across its attempts ----
+
+    private final class Attempt implements Call {
+        private final HttpRequest request;
+        private final OnResponse onResponse;
+        private final OnFailure onFailure;
+        private final int retries;
+        private int attempt;
+        private volatile boolean cancelled;
+        private volatile boolean inFlight;
+        @Nullable private volatile Call current;
+        @Nullable private volatile ScheduledFuture<?> pending;
+
+        Attempt(HttpRequest request, OnResponse onResponse, OnFailure onFailure) {
+            // Retries happen here; the transport below makes one attempt (on a copy: the caller's
+            // request may be reused).
+            this.request = request.copy().maxRetries(0);
+            this.onResponse = onResponse;
+            this.onFailure = onFailure;
+            this.retries = request.maxRetries();
+        }
+
+        void start() {
+            if (cancelled) return;
+            CircuitBreaker.OpenException open = breaker.tryAcquire();
+            if (open != null) { onFailure.onFailure(open); return; }
+            inFlight = true;
+            current = delegate.enqueue(request, this::succeeded, this::failed);
+        }
+
+        @Override public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = pending;
+            if (f != null) f.cancel(false);
+            Call c = current;
+            if (c != null) c.cancel();
+            if (inFlight) { inFlight = false; breaker.onAbandoned(); }
+        }
+
+        private void succeeded(HttpResponse r) {
+            inFlight = false;
+            breaker.onSuccess();
+            if (!cancelled) onResponse.onResponse(r);
+        }
+
+        private void failed(Exception e) {
+            inFlight = false;
+            HttpResponse r = e instanceof HttpException ? ((HttpException) e).response : null;
+            boolean outage = r == null || r.code >= 500 || r.code == 429;
+            if (cancelled) return;
+            if (attempt < retries && retryable(e, r)) {
+                long wait = backoffMs(attempt, r);
+                if (wait >= 0) {
+                    attempt++;
+                    pending = timer().schedule(this::start, wait, TimeUnit.MILLISECONDS);
+                    // Not yet a verdict on the provider: only the final outcome feeds the breaker.
+                    breaker.onAbandoned();
+                    return;
+                }
+            }
+            if (outage) breaker.onFailure(); else breaker.onSuccess(); // a 4xx means it's up
+            onFailure.onFailure(e);
+        }
+
+        private boolean retryable(Exception e, @Nullable HttpResponse r) {
+            if (r != null) {
+                if (r.code == 429 || r.code == 503) return true;
+                return request.isGet() && r.code >= 500;
+            }
+            if (request.isGet()) return true;
+            // A POST whose connection never opened cannot have been applied.
+            return e instanceof ConnectException || e instanceof UnknownHostException;
+        }
+    }
+
+    /** Jittered exponential delay for retry {@code n} (0-based); -1 if Retry-After is too far out. */
+    private static long backoffMs(int n, @Nullable HttpResponse r) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(n, 16));
+        long jitter = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        long retryAfter = r != null ? retryAfterMs(r) : 0L;
+        if (retryAfter > MAX_RETRY_AFTER_MS) return -1L;
+        return Math.max(retryAfter, jitter);
+    }
+
+    /** Retry-After in delta-seconds (HTTP-date form is treated as absent). */
+    private static long retryAfterMs(HttpResponse r) {
+        String h = r.header("Retry-After");
+        if (h == null) return 0L;
+        try { return (long) (Double.parseDouble(h.trim()) * 1000d); }
+        catch (NumberFormatException e) { return 0L; }
+    }
+}
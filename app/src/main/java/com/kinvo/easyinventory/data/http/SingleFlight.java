@@ -0,0 +1,113 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces identical in-flight GETs: while one is on the wire, further requests with the same
+ * method + URL + headers (i.e. the same auth scope) join it instead of opening their own call.
+ * Every joiner gets the same {@link HttpResponse}; it is marked {@link HttpResponse#isShared()
+ * shared} so the parse stage decodes it once and fans the parsed result out.
+ * Cancelling a joiner only detaches it; the network call is cancelled when nobody is left.
+ * POSTs are never coalesced. Thread-safe.
+ */
+public final class SingleFlight {
+
+    private final Map<String, Flight> inflight = new HashMap<>();
+
+    /** A transport view that coalesces through {@code delegate}. */
+    @NonNull
+    public HttpTransport over(@NonNull HttpTransport delegate) {
+        return new HttpTransport() {
+            @NonNull @Override
+            public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse,
+                                @NonNull OnFailure onFailure) {
+                if (!request.isGet()) return delegate.enqueue(request, onResponse, onFailure);
+                return join(delegate, request, new Waiter(onResponse, onFailure));
+            }
+
+            @Override public void shutdown() { delegate.shutdown(); }
+        };
+    }
+
+    /** Number of distinct calls currently on the wire (diagnostics). */
+    public synchronized int inFlight() { return inflight.size(); }
+
+    private Waiter join(HttpTransport delegate, HttpRequest request, Waiter w) {
+        String key = request.fingerprint(); // headers carry the credentials
+        Flight f;
+        synchronized (this) {
+            f = inflight.get(key);
+            if (f != null) {
+                f.waiters.add(w);
+                w.flight = f;
+                return w;
+            }
+            f = new Flight(key);
+            f.waiters.add(w);
+            w.flight = f;
+            inflight.put(key, f);
+        }
+        Flight flight = f;
+        HttpTransport.Call call = delegate.enqueue(request,
+                resp -> {
+                    List<Waiter> ws = land(flight);
+                    if (ws.size() > 1) resp.markShared();
+                    for (Waiter x : ws) x.onResponse.onResponse(resp);
+                },
+                err -> {
+                    for (Waiter x : land(flight)) x.onFailure.onFailure(err);
+                });
+        synchronized (this) {
+            if (flight.landed || !flight.waiters.isEmpty()) { flight.call = call; return w; }
+        }
+        call.cancel(); // every waiter left before the call was even handed back
+        return w;
+    }
+
+    /** Remove the flight and take its (live) waiters. */
+    private synchronized List<Waiter> land(Flight f) {
+        f.landed = true;
+        if (inflight.get(f.key) == f) inflight.remove(f.key);
+        List<Waiter> ws = new ArrayList<>(f.waiters);
+        f.waiters.clear();
+        return ws;
+    }
+
+    private void leave(Waiter w) {
+        HttpTransport.Call toCancel = null;
+        synchronized (this) {
+            Flight f = w.flight;
+            if (f == null || f.landed || !f.waiters.remove(w) || !f.waiters.isEmpty()) return;
+            if (inflight.get(f.key) == f) inflight.remove(f.key);
+            toCancel = f.call;
+        }
+        if (toCancel != null) toCancel.cancel();
+    }
+
+    private static final class Flight {
+        final String key;
+        final List<Waiter> waiters = new ArrayList<>();
+        HttpTransport.Call call;
+        boolean landed;
+
+        Flight(String key) { this.key = key; }
+    }
+
+    private final class Waiter implements HttpTransport.Call {
+        final HttpTransport.OnResponse onResponse;
+        final HttpTransport.OnFailure onFailure;
+        Flight flight;
+
+        Waiter(HttpTransport.OnResponse onResponse, HttpTransport.OnFailure onFailure) {
+            this.onResponse = onResponse;
+            this.onFailure = onFailure;
+        }
+
+        @Override public void cancel() { leave(this); }
+    }
+}
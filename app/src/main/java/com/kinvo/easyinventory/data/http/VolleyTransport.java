@@ -0,0 +1,88 @@
+package com.kinvo.easyinventory.data.http;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Header;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** HttpTransport over a (shared) Volley RequestQueue. HTTP/1.1 only; kept as a fallback transport. */
+public final class VolleyTransport implements HttpTransport {
+
+    private final RequestQueue queue;
+
+    public VolleyTransport(@NonNull RequestQueue queue) {
+        this.queue = queue;
+    }
+
+    @NonNull @Override
+    public Call enqueue(@NonNull HttpRequest request, @NonNull OnResponse onResponse, @NonNull OnFailure onFailure) {
+        RawRequest r = new RawRequest(request, onResponse, onFailure);
+        r.setRetryPolicy(new DefaultRetryPolicy(request.timeoutMs(), request.maxRetries(), 1.0f));
+        r.setShouldCache(false);
+        if (request.tag() != null) r.setTag(request.tag());
+        queue.add(r);
+        return r::cancel;
+    }
+
+    @Override
+    public void shutdown() {
+        queue.cancelAll(r -> true);
+        queue.stop();
+    }
+
+    private static HttpResponse toResponse(NetworkResponse nr) {
+        Map<String, List<String>> h = new LinkedHashMap<>();
+        if (nr.allHeaders != null) {
+            for (Header x : nr.allHeaders) {
+                List<String> l = h.get(x.getName());
+                if (l == null) { l = new ArrayList<>(); h.put(x.getName(), l); }
+                l.add(x.getValue());
+            }
+        }
+        return new HttpResponse(nr.statusCode, h, nr.data);
+    }
+
+    private static final class RawRequest extends Request<HttpResponse> {
+        private final HttpRequest spec;
+        private final OnResponse onResponse;
+        private final OnFailure onFailure;
+
+        RawRequest(HttpRequest spec, OnResponse onResponse, OnFailure onFailure) {
+            super(spec.isGet() ? Method.GET : Method.POST, spec.url, null);
+            this.spec = spec;
+            this.onResponse = onResponse;
+            this.onFailure = onFailure;
+        }
+
+        @Override public Map<String, String> getHeaders() { return spec.headers; }
+
+        @Override public byte[] getBody() { return spec.body; }
+
+        @Override public String getBodyContentType() {
+            return spec.contentType != null ? spec.contentType : super.getBodyContentType();
+        }
+
+        @Override
+        protected Response<HttpResponse> parseNetworkResponse(NetworkResponse nr) {
+            return Response.success(toResponse(nr), HttpHeaderParser.parseCacheHeaders(nr));
+        }
+
+        @Override protected void deliverResponse(HttpResponse r) { onResponse.onResponse(r); }
+
+        @Override public void deliverError(VolleyError e) {
+            if (e.networkResponse != null) onFailure.onFailure(new HttpException(toResponse(e.networkResponse)));
+            else onFailure.onFailure(e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.kinvo.easyinventory.model;
 
+import com.kinvo.easyinventory.util.SearchText;
+
 import java.math.BigDecimal;
 
 public class Product {
@@ -14,6 +16,8 @@ public class Product {
     private Double currentStock;      // may be null
     private Long variantId;           // for Shopify etc.
     private Long inventoryItemId;     // for Shopify stock operations
+    private Long updatedAtMs;         // provider's last-modified time (epoch ms), if it reports one
+    private String searchKey;         // normalized description + sku + barcode; null = not built yet
 
     // UI helpers
     private boolean stockUpdatedMessageVisible;
@@ -26,13 +30,13 @@ public class Product {
     public void setProvider(String provider) { this.provider = provider; }
 
     public String getDescription() { return description; }
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) { this.description = description; this.searchKey = null; }
 
     public String getSku() { return sku; }
-    public void setSku(String sku) { this.sku = sku; }
+    public void setSku(String sku) { this.sku = sku; this.searchKey = null; }
 
     public String getBarcode() { return barcode; }
-    public void setBarcode(String barcode) { this.barcode = barcode; }
+    public void setBarcode(String barcode) { this.barcode = barcode; this.searchKey = null; }
 
     public BigDecimal getPriceBig() { return priceBig == null ? BigDecimal.ZERO : priceBig; }
     public void setPriceBig(BigDecimal priceBig) { this.priceBig = (priceBig == null ? BigDecimal.ZERO : priceBig); }
@@ -46,6 +50,26 @@ public class Product {
     public Long getInventoryItemId() { return inventoryItemId; }
     public void setInventoryItemId(Long inventoryItemId) { this.inventoryItemId = inventoryItemId; }
 
+    public Long getUpdatedAtMs() { return updatedAtMs; }
+    public void setUpdatedAtMs(Long updatedAtMs) { this.updatedAtMs = updatedAtMs; }
+
+    /**
+     * {@link SearchText#key} of description + sku + barcode, built at ingestion (the decoders call
+     * {@link #buildSearchKey()} on the parse thread; the catalog DB stores it) and reused by every
+     * search. The setters above reset it; a product built anywhere else gets it on first use.
+     */
+    public String getSearchKey() {
+        String k = searchKey;
+        if (k == null) searchKey = k = SearchText.key(description, sku, barcode);
+        return k;
+    }
+
+    /** Normalize the key now (ingestion, off main) instead of on the first search that needs it. */
+    public void buildSearchKey() { searchKey = SearchText.key(description, sku, barcode); }
+
+    /** Key already normalized elsewhere (the catalog DB stores it next to the row). */
+    public void setSearchKey(String searchKey) { this.searchKey = searchKey; }
+
     public boolean isStockUpdatedMessageVisible() { return stockUpdatedMessageVisible; }
     public void setStockUpdatedMessageVisible(boolean v) { this.stockUpdatedMessageVisible = v; }
 }
@@ -0,0 +1,31 @@
+package com.kinvo.easyinventory.util;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Keys derived from credentials (cache entries, coalesced calls, outbox accounts): a SHA-256
+ * digest, so two logins never collide and the secret itself is never stored.
+ */
+public final class Digest {
+
+    private Digest() {}
+
+    /** First 20 bytes of SHA-256(UTF-8 of {@code s}) as 40 hex chars. */
+    @NonNull
+    public static String sha256Hex(@NonNull String s) {
+        byte[] d;
+        try {
+            d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) { // every Android runtime ships SHA-256
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(40);
+        for (int i = 0; i < 20; i++) {
+            hex.append(Character.forDigit((d[i] >> 4) & 0xf, 16)).append(Character.forDigit(d[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
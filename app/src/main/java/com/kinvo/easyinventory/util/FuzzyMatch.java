@@ -0,0 +1,112 @@
+package com.kinvo.easyinventory.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kinvo.easyinventory.model.Product;
+
+import java.util.List;
+
+/**
+ * Typo-tolerant scoring of a query against a normalized search key (see {@link SearchText}).
+ * Every query token must match some word of the key, best match wins:
+ *   exact word 1.0, word prefix 0.9, substring 0.75,
+ *   within {@link #maxEdits} edits of the word (0.7) or of a prefix of it (0.6), minus 0.15 per edit.
+ * A key with any typo-matched token scores at most 0.5, so exact hits always rank first.
+ * Edits are insert / delete / substitute / swap of neighbours (optimal string alignment).
+ * Words are walked in place inside the key: exact matching allocates nothing per candidate.
+ */
+public final class FuzzyMatch {
+
+    public static final double NO_MATCH = -1;
+
+    private FuzzyMatch() {}
+
+    /** Edits tolerated for a token of {@code len} chars: none under 4, one under 8, else two. */
+    public static int maxEdits(int len) {
+        return len < 4 ? 0 : len < 8 ? 1 : 2;
+    }
+
+    /** Score in (0, 1] of {@code key} for {@code tokens}, or {@link #NO_MATCH}. */
+    public static double score(@NonNull String[] tokens, @Nullable String key) {
+        if (tokens.length == 0) return 1;
+        if (key == null || key.isEmpty()) return NO_MATCH;
+        double sum = 0;
+        boolean typo = false;
+        for (String t : tokens) {
+            double best = NO_MATCH;
+            for (int start = 0; start < key.length() && best < 1; ) {
+                int end = key.indexOf(' ', start);
+                if (end < 0) end = key.length();
+                best = Math.max(best, wordScore(t, key, start, end));
+                start = end + 1;
+            }
+            if (best < 0.75 && key.contains(t)) best = 0.75; // spans a word boundary
+            if (best == NO_MATCH) return NO_MATCH;
+            if (best < 0.75) typo = true;
+            sum += best;
+        }
+        double s = sum / tokens.length;
+        return typo ? s * 0.5 : s;
+    }
+
+    /**
+     * {@code products} best first, at most {@code limit} (<= 0 = all). Products the query does not
+     * match at all are kept after the matches (the provider matched them on some other field).
+     */
+    @NonNull
+    public static List<Product> rank(@NonNull List<Product> products, @Nullable String query, int limit) {
+        String[] tokens = SearchText.tokens(query);
+        TopK<Product> top = new TopK<>(limit);
+        for (Product p : products) {
+            double s = score(tokens, p.getSearchKey());
+            top.offer(p, s == NO_MATCH ? 0 : s);
+        }
+        return top.drain();
+    }
+
+    /** Score of token {@code t} against the word key[start, end). */
+    private static double wordScore(String t, String key, int start, int end) {
+        int len = end - start;
+        if (t.length() <= len && key.startsWith(t, start)) return t.length() == len ? 1 : 0.9;
+        int at = key.indexOf(t, start + 1);
+        if (at >= 0 && at + t.length() <= end) return 0.75;
+        int max = maxEdits(t.length());
+        if (max == 0 || t.length() - len > max) return NO_MATCH;
+        int[] d = distances(t, key, start, end, max);
+        if (d[0] <= max) return 0.7 - 0.15 * d[0];
+        if (d[1] <= max) return 0.6 - 0.15 * d[1];
+        return NO_MATCH;
+    }
+
+    /**
+     * {full, prefix} edit distance of {@code t} to the word w = key[start, end) and to its closest
+     * prefix; values over {@code max} are only known to be over (rows stop early once every cell
+     * exceeds it).
+     */
+    private static int[] distances(String t, String key, int start, int end, int max) {
+        int n = end - start;
+        int over = max + 1;
+        int[] prev2 = new int[n + 1];
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) prev[j] = j;
+        for (int i = 1; i <= t.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            char a = t.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                char b = key.charAt(start + j - 1);
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + (a == b ? 0 : 1));
+                if (i > 1 && j > 1 && a == key.charAt(start + j - 2) && t.charAt(i - 2) == b) v = Math.min(v, prev2[j - 2] + 1);
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) return new int[] { over, over };
+            int[] r = prev2; prev2 = prev; prev = cur; cur = r;
+        }
+        int prefix = over;
+        for (int j = 0; j <= n; j++) prefix = Math.min(prefix, prev[j]);
+        return new int[] { prev[n], prefix };
+    }
+}
@@ -0,0 +1,49 @@
+package com.kinvo.easyinventory.util;
+
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Search-key normalization shared by the local catalog and in-memory matching.
+ * "Café  Crème 330ML" -> "cafe creme 330ml": NFD, combining marks stripped, lower-cased (ROOT),
+ * punctuation turned into spaces, whitespace collapsed.
+ */
+public final class SearchText {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SearchText() {}
+
+    /** Normalized form of one string; never null. */
+    public static String normalize(@Nullable String s) {
+        if (s == null || s.isEmpty()) return "";
+        String t = Normalizer.normalize(s, Normalizer.Form.NFD);
+        t = MARKS.matcher(t).replaceAll("");
+        t = t.toLowerCase(Locale.ROOT);
+        t = NON_WORD.matcher(t).replaceAll(" ");
+        return t.trim();
+    }
+
+    /** Normalized concatenation of several fields (e.g. name + sku + barcode). */
+    public static String key(@Nullable String... parts) {
+        if (parts == null) return "";
+        StringBuilder sb = new StringBuilder();
+        for (String p : parts) {
+            String n = normalize(p);
+            if (n.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(n);
+        }
+        return sb.toString();
+    }
+
+    /** Tokens of the normalized string (empty array for blank input). */
+    public static String[] tokens(@Nullable String s) {
+        String n = normalize(s);
+        return n.isEmpty() ? new String[0] : n.split(" ");
+    }
+}
@@ -0,0 +1,61 @@
+package com.kinvo.easyinventory.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code k} best-scoring items seen so far in a min-heap: O(n log k) instead of sorting
+ * everything. Ties keep the earlier item. Not thread-safe.
+ */
+public final class TopK<T> {
+
+    private final int k;
+    private final PriorityQueue<Scored<T>> heap;
+    private long seq;
+
+    /** {@code k <= 0} = unbounded. */
+    public TopK(int k) {
+        this.k = k > 0 ? k : Integer.MAX_VALUE;
+        // Worst on top: lowest score, and among equals the latest arrival.
+        this.heap = new PriorityQueue<>(Math.min(this.k, 64), (a, b) -> {
+            int c = Double.compare(a.score, b.score);
+            return c != 0 ? c : Long.compare(b.seq, a.seq);
+        });
+    }
+
+    public void offer(@NonNull T item, double score) {
+        if (heap.size() < k) {
+            heap.add(new Scored<>(item, score, seq++));
+        } else if (score > heap.peek().score) {
+            heap.poll();
+            heap.add(new Scored<>(item, score, seq++));
+        }
+    }
+
+    public int size() { return heap.size(); }
+
+    /** Best first. Leaves the heap empty. */
+    @NonNull
+    public List<T> drain() {
+        List<T> out = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) out.add(heap.poll().item);
+        Collections.reverse(out);
+        return out;
+    }
+
+    private static final class Scored<T> {
+        final T item;
+        final double score;
+        final long seq;
+
+        Scored(T item, double score, long seq) {
+            this.item = item;
+            this.score = score;
+            this.seq = seq;
+        }
+    }
+}
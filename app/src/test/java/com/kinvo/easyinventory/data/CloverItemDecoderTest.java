@@ -0,0 +1,63 @@
+package com.kinvo.easyinventory.data;
+
+import static org.junit.Assert.assertEquals;
+
+import com.kinvo.easyinventory.model.Product;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class CloverItemDecoderTest {
+
+    @Test
+    public void decodesItemsWithTheirStock() throws Exception {
+        String body = "{\"elements\":["
+                + "{\"id\":\"ABC123\",\"name\":\"Espresso Beans\",\"code\":\"EB-1\",\"alternateName\":\"7612345678901\","
+                + "\"price\":1299,\"modifiedTime\":1700000000000,"
+                + "\"itemStock\":{\"quantity\":4,\"modifiedTime\":1700000500000},\"categories\":{\"elements\":[]}},"
+                + "{\"id\":\"DEF456\",\"name\":\"Mug\",\"price\":850,\"itemStock\":{\"stockCount\":3}},"
+                + "\"not an object\""
+                + "],\"href\":\"https://api.clover.example/items\"}";
+        List<Product> out = CloverItemDecoder.decode(body.getBytes(StandardCharsets.UTF_8), null, 0);
+        assertEquals(2, out.size());
+
+        Product beans = out.get(0);
+        assertEquals("ABC123", beans.getExternalId());
+        assertEquals("Espresso Beans", beans.getDescription());
+        assertEquals("EB-1", beans.getSku());
+        assertEquals("7612345678901", beans.getBarcode());
+        assertEquals(new BigDecimal("12.99"), beans.getPriceBig());
+        assertEquals(4d, beans.getCurrentStock(), 0);
+        assertEquals(Long.valueOf(1700000500000L), beans.getUpdatedAtMs()); // stock change is newer
+        assertEquals("CLOVER", beans.getProvider());
+        assertEquals("espresso beans eb 1 7612345678901", beans.getSearchKey());
+
+        Product mug = out.get(1);
+        assertEquals(3d, mug.getCurrentStock(), 0); // stockCount when there is no quantity
+        assertEquals("", mug.getSku());
+    }
+
+    @Test
+    public void olderPayloadsUseItems() throws Exception {
+        String body = "{\"items\":[{\"id\":\"X\",\"name\":\"Old\"}]}";
+        List<Product> out = CloverItemDecoder.decode(body.getBytes(StandardCharsets.UTF_8), null, 0);
+        assertEquals(1, out.size());
+        assertEquals(0d, out.get(0).getCurrentStock(), 0);
+    }
+
+    @Test
+    public void stockRowsCarryTheirItem() throws Exception {
+        String body = "{\"elements\":["
+                + "{\"quantity\":9,\"modifiedTime\":1700000900000,\"item\":{\"id\":\"ABC123\",\"name\":\"Espresso Beans\","
+                + "\"modifiedTime\":1700000000000}},"
+                + "{\"quantity\":1}"
+                + "]}";
+        List<Product> out = CloverItemDecoder.decodeStocks(body.getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, out.size()); // a row without its item is skipped
+        assertEquals(9d, out.get(0).getCurrentStock(), 0);
+        assertEquals(Long.valueOf(1700000900000L), out.get(0).getUpdatedAtMs());
+    }
+}
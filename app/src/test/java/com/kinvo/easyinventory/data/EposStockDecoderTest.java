@@ -0,0 +1,64 @@
+package com.kinvo.easyinventory.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import com.kinvo.easyinventory.model.Product;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+public class EposStockDecoderTest {
+
+    private static final String PAGE = "{"
+            + "\"Data\":["
+            + "{\"ProductId\":11,\"StockItemId\":501,\"ProductName\":\"Crème Brûlée\",\"Sku\":\"CB-1\","
+            + "\"Barcode\":\"5012345678900\",\"CurrentStock\":12.5,\"SalePriceIncTax\":4.2,\"SalePriceExcTax\":3.5,"
+            + "\"MinimumStock\":2,\"MaximumStock\":40,\"Alerts\":false,\"Unknown\":{\"deep\":[1,2]}},"
+            + "{\"ProductId\":12,\"StockItemId\":0,\"Description\":\"Only a description\",\"CurrentStock\":null}"
+            + "],"
+            + "\"_links\":{\"NextPage\":\"https://api.example/inventory/stocks?page=2\"}}";
+
+    @Test
+    public void decodesRowsAndNextPage() throws Exception {
+        EposStockDecoder.Page page = EposStockDecoder.decode(PAGE.getBytes(StandardCharsets.UTF_8));
+        assertEquals("https://api.example/inventory/stocks?page=2", page.nextPage);
+        assertEquals(2, page.rows.size());
+
+        EposStockDecoder.Row row = page.rows.get(0);
+        assertEquals(11L, row.productId);
+        assertEquals(501, row.stockItemId);
+        assertEquals(2, row.minimumStock);
+        assertEquals(40, row.maximumStock);
+        assertFalse(row.alerts);
+        Product p = row.product;
+        assertEquals("501", p.getExternalId()); // StockItemId is the id updates use
+        assertEquals("Crème Brûlée", p.getDescription());
+        assertEquals("CB-1", p.getSku());
+        assertEquals("5012345678900", p.getBarcode());
+        assertEquals(12.5, p.getCurrentStock(), 0);
+        assertEquals(new BigDecimal("4.2"), p.getPriceBig()); // inc-tax price wins
+        assertEquals("EPOSNOW", p.getProvider());
+        assertEquals("creme brulee cb 1 5012345678900", p.getSearchKey());
+    }
+
+    @Test
+    public void missingFieldsFallBack() throws Exception {
+        Product p = EposStockDecoder.decode(PAGE.getBytes(StandardCharsets.UTF_8)).rows.get(1).product;
+        assertEquals("12", p.getExternalId()); // no StockItemId: ProductId
+        assertEquals("12", p.getSku());
+        assertEquals("Only a description", p.getDescription());
+        assertEquals("", p.getBarcode());
+        assertEquals(0d, p.getCurrentStock(), 0);
+    }
+
+    @Test
+    public void lastPageHasNoNext() throws Exception {
+        EposStockDecoder.Page page = EposStockDecoder.decode("{\"Data\":[]}".getBytes(StandardCharsets.UTF_8));
+        assertNull(page.nextPage);
+        assertEquals(0, page.rows.size());
+    }
+}
@@ -0,0 +1,61 @@
+package com.kinvo.easyinventory.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+public class ShopifyInventoryBatcherTest {
+
+    private static ShopifyInventoryBatcher.Rejection rejection(String userErrors, int batchSize) throws Exception {
+        return ShopifyInventoryBatcher.Rejection.of(new JSONArray(userErrors), batchSize);
+    }
+
+    @Test
+    public void errorsFailOnlyTheEntryTheyPointAt() throws Exception {
+        ShopifyInventoryBatcher.Rejection r = rejection("[{\"field\":[\"input\",\"quantities\",\"2\",\"quantity\"],"
+                + "\"message\":\"Quantity is too big\",\"code\":\"INVALID_QUANTITY\"}]", 5);
+        assertEquals(1, r.byIndex.size());
+        assertTrue(r.byIndex.get(2) instanceof IllegalStateException);
+        assertEquals("GraphQL userErrors: Quantity is too big", r.byIndex.get(2).getMessage());
+        assertNull(r.general);
+    }
+
+    @Test
+    public void staleCompareQuantityIsAConflict() throws Exception {
+        ShopifyInventoryBatcher.Rejection r = rejection("[{\"field\":[\"input\",\"quantities\",\"0\",\"compareQuantity\"],"
+                + "\"message\":\"The quantity has changed\",\"code\":\"COMPARE_QUANTITY_STALE\"}]", 1);
+        assertTrue(r.byIndex.get(0) instanceof StockConflictException);
+    }
+
+    @Test
+    public void messagesForOneEntryAreJoined() throws Exception {
+        ShopifyInventoryBatcher.Rejection r = rejection("["
+                + "{\"field\":[\"input\",\"quantities\",\"1\"],\"message\":\"a\"},"
+                + "{\"field\":[\"input\",\"quantities\",\"1\"],\"message\":\"b\",\"code\":\"COMPARE_QUANTITY_STALE\"}]", 2);
+        assertEquals(1, r.byIndex.size());
+        assertTrue(r.byIndex.get(1) instanceof StockConflictException); // any stale message makes it a conflict
+        assertEquals("a; b", r.byIndex.get(1).getMessage());
+    }
+
+    @Test
+    public void errorsPointingNowhereAreGeneral() throws Exception {
+        ShopifyInventoryBatcher.Rejection r = rejection("["
+                + "{\"field\":[\"input\",\"reason\"],\"message\":\"Invalid reason\"},"
+                + "{\"field\":[\"input\",\"quantities\",\"7\"],\"message\":\"Out of range\"},"
+                + "{\"message\":\"No field\"}]", 3);
+        assertTrue(r.byIndex.isEmpty());
+        assertTrue(r.general instanceof IllegalStateException);
+        assertEquals("GraphQL userErrors: Invalid reason; Out of range; No field", r.general.getMessage());
+    }
+
+    @Test
+    public void nonNumericIndexIsGeneral() throws Exception {
+        ShopifyInventoryBatcher.Rejection r = rejection(
+                "[{\"field\":[\"input\",\"quantities\",\"x\"],\"message\":\"m\",\"code\":\"COMPARE_QUANTITY_STALE\"}]", 3);
+        assertTrue(r.byIndex.isEmpty());
+        assertTrue(r.general instanceof StockConflictException);
+    }
+}
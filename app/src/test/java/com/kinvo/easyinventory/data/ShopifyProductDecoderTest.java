@@ -0,0 +1,68 @@
+package com.kinvo.easyinventory.data;
+
+import static org.junit.Assert.assertEquals;
+
+import com.kinvo.easyinventory.model.Product;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ShopifyProductDecoderTest {
+
+    // "variants" before "title": the variant names only resolve once the product title is known.
+    private static final String PAGE = "{\"products\":["
+            + "{\"id\":1,\"variants\":["
+            + "{\"id\":101,\"title\":\"Large\",\"sku\":\"TS-L\",\"barcode\":\"0001\",\"price\":\"19.99\","
+            + "\"inventory_quantity\":7,\"inventory_item_id\":9001,\"updated_at\":\"2024-05-01T10:00:00Z\"},"
+            + "{\"id\":102,\"title\":\"Small\",\"sku\":null,\"barcode\":null,\"price\":\"17.50\","
+            + "\"inventory_quantity\":-2,\"inventory_item_id\":9002}"
+            + "],\"title\":\"T-Shirt\",\"updated_at\":\"2024-06-01T10:00:00.250Z\",\"body_html\":\"<p>skipped</p>\"},"
+            + "{\"id\":2,\"title\":\"Gift Card\",\"variants\":["
+            + "{\"id\":201,\"title\":\"Default Title\",\"sku\":\"GC\",\"price\":\"25.00\",\"inventory_item_id\":9003}]}"
+            + "]}";
+
+    private static List<Product> decode(int limit) throws Exception {
+        return ShopifyProductDecoder.decode(PAGE.getBytes(StandardCharsets.UTF_8), null, limit);
+    }
+
+    @Test
+    public void oneProductPerVariant() throws Exception {
+        List<Product> out = decode(0);
+        assertEquals(3, out.size());
+
+        Product large = out.get(0);
+        assertEquals("T-Shirt — Large", large.getDescription());
+        assertEquals(Long.valueOf(101), large.getVariantId());
+        assertEquals(Long.valueOf(9001), large.getInventoryItemId());
+        assertEquals("TS-L", large.getSku());
+        assertEquals("0001", large.getBarcode());
+        assertEquals(new BigDecimal("19.99"), large.getPriceBig());
+        assertEquals(7d, large.getCurrentStock(), 0);
+        assertEquals("SHOPIFY", large.getProvider());
+        assertEquals("t shirt large ts l 0001", large.getSearchKey());
+        // Changed-at is the newer of product and variant.
+        assertEquals(Long.valueOf(1717236000250L), large.getUpdatedAtMs());
+
+        Product small = out.get(1);
+        assertEquals("", small.getSku());
+        assertEquals("", small.getBarcode());
+        assertEquals(-2d, small.getCurrentStock(), 0);
+
+        assertEquals("Gift Card", out.get(2).getDescription()); // "Default Title" is dropped
+    }
+
+    @Test
+    public void limitStopsEarly() throws Exception {
+        assertEquals(2, decode(1).size()); // the product that crosses the limit is kept whole
+    }
+
+    @Test
+    public void filterSeesFinishedProducts() throws Exception {
+        List<Product> out = ShopifyProductDecoder.decode(PAGE.getBytes(StandardCharsets.UTF_8),
+                p -> p.getDescription().startsWith("T-Shirt"), 0);
+        assertEquals(2, out.size());
+    }
+}
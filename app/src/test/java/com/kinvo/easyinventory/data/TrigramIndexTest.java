@@ -0,0 +1,99 @@
+package com.kinvo.easyinventory.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.kinvo.easyinventory.model.Product;
+import com.kinvo.easyinventory.util.SearchText;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrigramIndexTest {
+
+    private static Product product(String description, String sku, String barcode) {
+        Product p = new Product();
+        p.setDescription(description);
+        p.setSku(sku);
+        p.setBarcode(barcode);
+        return p;
+    }
+
+    private static List<String> search(TrigramIndex idx, String query) {
+        List<String> out = new ArrayList<>();
+        for (Product p : idx.search(SearchText.tokens(query), 0)) out.add(p.getDescription());
+        return out;
+    }
+
+    private static TrigramIndex catalog() {
+        TrigramIndex idx = new TrigramIndex();
+        idx.add(product("Dark Chocolate 70%", "CH-70", "5000000000001"));
+        idx.add(product("Milk Chocolate", "CH-MILK", "5000000000002"));
+        idx.add(product("Coca-Cola Coke 330ml", "COKE-330", "5000000000003"));
+        idx.add(product("Chocolate Chip Cookies", "CK-1", "5000000000004"));
+        return idx;
+    }
+
+    @Test
+    public void substringOfEveryTokenMatchesAnywhereInTheKey() {
+        TrigramIndex idx = catalog();
+        assertEquals(List.of("Coca-Cola Coke 330ml"), search(idx, "coke 330"));
+        assertEquals(List.of("Milk Chocolate"), search(idx, "milk choc"));
+        assertEquals(List.of("Coca-Cola Coke 330ml"), search(idx, "coke-330")); // sku
+        // Barcode: the exact one first; its one-digit neighbours follow as typo matches.
+        assertEquals("Milk Chocolate", search(idx, "5000000000002").get(0));
+    }
+
+    @Test
+    public void typoFallbackRunsWhenExactHitsAreThin() {
+        TrigramIndex idx = catalog();
+        List<String> hits = search(idx, "milk choclate");
+        assertEquals(List.of("Milk Chocolate"), hits);
+    }
+
+    @Test
+    public void exactHitsRankBeforeTypoHits() {
+        TrigramIndex idx = new TrigramIndex();
+        idx.add(product("Chocolatier Box", "", ""));   // typo match of "chocolate"
+        idx.add(product("Chocolate Bar", "", ""));     // exact word
+        List<String> hits = search(idx, "chocolate");
+        assertEquals("Chocolate Bar", hits.get(0));
+    }
+
+    @Test
+    public void unknownTrigramFindsNothing() {
+        assertTrue(search(catalog(), "zzzz").isEmpty());
+    }
+
+    @Test
+    public void tombstonedDocumentsAreNeverReturned() {
+        TrigramIndex idx = new TrigramIndex();
+        int old = idx.add(product("Milk Chocolate", "CH-MILK", ""));
+        idx.remove(old);
+        idx.add(product("Milk Chocolate 2", "CH-MILK", ""));
+        assertEquals(List.of("Milk Chocolate 2"), search(idx, "milk"));
+        assertEquals(List.of("Milk Chocolate 2"), search(idx, "milk chocolte")); // typo pass too
+        assertEquals(1, idx.size());
+        idx.remove(old); // twice is a no-op
+        assertEquals(1, idx.size());
+    }
+
+    @Test
+    public void compactionOnceAQuarterIsTombstones() {
+        TrigramIndex idx = new TrigramIndex();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) ids.add(idx.add(product("Item " + i, "SKU" + i, "")));
+        for (int i = 0; i < 500; i++) idx.remove(ids.get(i));
+        assertFalse(idx.needsCompaction());
+        idx.remove(ids.get(500));
+        assertTrue(idx.needsCompaction());
+
+        TrigramIndex small = new TrigramIndex(); // a handful of tombstones is never worth a rebuild
+        for (int i = 0; i < 10; i++) small.add(product("Item " + i, "", ""));
+        for (int i = 0; i < 9; i++) small.remove(i);
+        assertFalse(small.needsCompaction());
+    }
+}
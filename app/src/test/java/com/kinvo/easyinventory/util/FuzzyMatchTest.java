@@ -0,0 +1,62 @@
+package com.kinvo.easyinventory.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FuzzyMatchTest {
+
+    private static final double EPS = 1e-9;
+
+    private static double score(String query, String key) {
+        return FuzzyMatch.score(SearchText.tokens(query), key);
+    }
+
+    @Test
+    public void exactPrefixAndSubstringRankAboveTypos() {
+        assertEquals(1.0, score("coke", "coca cola coke 330ml"), EPS);
+        assertEquals(0.9, score("cok", "coca cola coke 330ml"), EPS);
+        assertEquals(0.75, score("ola", "coca cola coke 330ml"), EPS);
+        assertTrue(score("cokr", "coca cola coke 330ml") < 0.5);
+    }
+
+    @Test
+    public void substitutionIsOneEdit() {
+        // "chocolatr" -> "chocolate": 1 substitution, 9 chars allow 2; typo keys score half.
+        assertEquals((0.7 - 0.15) * 0.5, score("chocolatr", "dark chocolate"), EPS);
+    }
+
+    @Test
+    public void deletionIsOneEdit() {
+        assertEquals((0.7 - 0.15) * 0.5, score("choclate", "dark chocolate"), EPS);
+    }
+
+    @Test
+    public void adjacentSwapIsOneEditNotTwo() {
+        // Optimal string alignment: a transposition costs 1 (plain Levenshtein would say 2).
+        assertEquals((0.7 - 0.15) * 0.5, score("chocolaet", "dark chocolate"), EPS);
+    }
+
+    @Test
+    public void typoAgainstAPrefixOfTheWord() {
+        // "choclat" is 2 edits from "chocolate" but 1 from its prefix "chocolat".
+        assertEquals((0.6 - 0.15) * 0.5, score("choclat", "dark chocolate"), EPS);
+    }
+
+    @Test
+    public void editBudgetGrowsWithTokenLength() {
+        assertEquals(0, FuzzyMatch.maxEdits(3));
+        assertEquals(1, FuzzyMatch.maxEdits(4));
+        assertEquals(1, FuzzyMatch.maxEdits(7));
+        assertEquals(2, FuzzyMatch.maxEdits(8));
+        assertEquals(FuzzyMatch.NO_MATCH, score("cut", "cat food"), EPS); // short tokens: no typos
+        assertEquals(FuzzyMatch.NO_MATCH, score("chocolxyz", "dark chocolate"), EPS); // 3 edits
+    }
+
+    @Test
+    public void everyTokenMustMatch() {
+        assertEquals(FuzzyMatch.NO_MATCH, score("coke zero", "coca cola coke 330ml"), EPS);
+        assertEquals(FuzzyMatch.NO_MATCH, score("coke", null), EPS);
+    }
+}